@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager.ktx
+
+import com.projectplace.android.syncmanager.SyncFetch
+import com.projectplace.android.syncmanager.SyncManager
+import com.projectplace.android.syncmanager.SyncObject
+import com.projectplace.android.syncmanager.SyncUpload
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.callbackFlow
+
+/**
+ * An event from a [SyncObject.SyncListener] callback.
+ */
+sealed class SyncEvent {
+    abstract val syncObject: SyncObject
+
+    data class FetchDone(override val syncObject: SyncFetch) : SyncEvent()
+
+    data class UploadDone(override val syncObject: SyncUpload) : SyncEvent()
+
+    data class Aborted(override val syncObject: SyncObject) : SyncEvent()
+}
+
+/**
+ * A flow of all sync events of the sync manager. A sync listener is registered when the flow is collected and
+ * unregistered when the collection stops. The listener is called with [SyncManager.DIRECT_EXECUTOR], so events for
+ * saved fetches and uploads are sent from the background thread without waiting for the main thread.
+ *
+ * The sync manager can't wait for a slow collector, so the events are kept in a buffer. When the buffer is full the
+ * overflow policy decides which events are dropped. [BufferOverflow.SUSPEND] behaves as [BufferOverflow.DROP_LATEST].
+ *
+ * @param capacity The number of events to buffer.
+ * @param onBufferOverflow What to drop when the buffer is full. Default is to drop the oldest event.
+ */
+fun SyncManager.syncEvents(
+    capacity: Int = 64,
+    onBufferOverflow: BufferOverflow = BufferOverflow.DROP_OLDEST
+): Flow<SyncEvent> = callbackFlow {
+    val listener = object : SyncObject.SyncListener {
+        override fun onFetchDone(syncFetch: SyncFetch) {
+            trySend(SyncEvent.FetchDone(syncFetch))
+        }
+
+        override fun onUploadDone(syncUpload: SyncUpload) {
+            trySend(SyncEvent.UploadDone(syncUpload))
+        }
+
+        override fun onSyncAborted(syncObject: SyncObject) {
+            trySend(SyncEvent.Aborted(syncObject))
+        }
+    }
+    registerSyncListener(listener, SyncManager.DIRECT_EXECUTOR)
+    awaitClose { unregisterSyncListener(listener) }
+}.buffer(capacity, onBufferOverflow)
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager.ktx
+
+import com.projectplace.android.syncmanager.SyncFetch
+import com.projectplace.android.syncmanager.SyncManager
+import com.projectplace.android.syncmanager.SyncObject
+import com.projectplace.android.syncmanager.SyncUpload
+import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Thrown by [fetchAwait] and [uploadAwait] when the sync object failed. The sync object is available to read the error.
+ */
+class SyncFailedException(val syncObject: SyncObject) :
+    Exception(syncObject.errorMessage ?: "${syncObject.javaClass.simpleName} failed", syncObject.getError<Any?>() as? Throwable)
+
+/**
+ * Thrown by [fetchAwait] and [uploadAwait] when the sync manager removed the sync object without running it, for example
+ * because [SyncManager.shouldSyncObject] returned false or an upload was superseded. [SyncObject.getReplacement] returns
+ * the sync object that took over, if any.
+ */
+class SyncAbortedException(val syncObject: SyncObject) :
+    Exception("${syncObject.javaClass.simpleName} was aborted")
+
+/**
+ * Adds the fetch to the sync manager and suspends until it is done.
+ *
+ * If an identical fetch of the same class is already queued, the fetch is not added and the coroutine waits for the
+ * identical fetch instead, which is then returned. This is the common case when two screens ask for the same data.
+ *
+ * If the coroutine is cancelled the fetch is cancelled with [SyncManager.cancel], but an identical fetch that is waited
+ * for is left running for the others. The payload of the returned fetch is kept with [SyncFetch.setKeepPayload] so it
+ * still has its data when the coroutine resumes.
+ *
+ * @return The fetch when it succeeded, or the identical fetch it was merged into. Check [SyncFetch.isFresh] to see if it
+ * was completed without being started.
+ * @throws SyncFailedException If the fetch, or the identical fetch, failed.
+ * @throws SyncAbortedException If the fetch was aborted, or merged into an identical fetch of another class.
+ */
+suspend fun <T : SyncFetch> SyncManager.fetchAwait(syncFetch: T): T = suspendCancellableCoroutine { continuation ->
+    // The coroutine resumes after the listeners have been called, when the payload would already be released
+    syncFetch.setKeepPayload(true)
+    // Set when the fetch is merged into an identical fetch that is already queued
+    var identicalListener: SyncObject.SyncListener? = null
+    syncFetch.syncListener = object : SyncObject.SyncListenerAdapter() {
+        override fun onFetchDone(fetch: SyncFetch) {
+            if (!continuation.isActive) return
+            if (fetch.isFailed) {
+                continuation.resumeWithException(SyncFailedException(fetch))
+            } else {
+                continuation.resume(syncFetch)
+            }
+        }
+
+        override fun onSyncAborted(syncObject: SyncObject) {
+            if (!continuation.isActive) return
+            val identicalFetch = syncObject.replacement
+            if (identicalFetch is SyncFetch && syncFetch.javaClass.isInstance(identicalFetch)) {
+                @Suppress("UNCHECKED_CAST")
+                identicalListener = awaitIdenticalFetch(identicalFetch as T, continuation)
+            } else {
+                continuation.resumeWithException(SyncAbortedException(syncObject))
+            }
+        }
+    }
+    continuation.invokeOnCancellation {
+        cancel(syncFetch)
+        identicalListener?.let { unregisterSyncListener(it) }
+    }
+    fetch(syncFetch)
+}
+
+/**
+ * Resumes the continuation with the result of a queued fetch that another fetch was merged into. The identical fetch
+ * might be delivered as the hedge that took over from it.
+ *
+ * @return The listener that waits for the identical fetch, to unregister if the coroutine is cancelled.
+ */
+private fun <T : SyncFetch> SyncManager.awaitIdenticalFetch(
+    identicalFetch: T,
+    continuation: CancellableContinuation<T>
+): SyncObject.SyncListener {
+    identicalFetch.setKeepPayload(true)
+    val listener = object : SyncObject.SyncListenerAdapter() {
+        private fun isIdenticalFetch(syncObject: SyncObject) =
+            syncObject === identicalFetch || syncObject === identicalFetch.replacement
+
+        override fun onFetchDone(fetch: SyncFetch) {
+            if (!isIdenticalFetch(fetch)) return
+            unregisterSyncListener(this)
+            if (!continuation.isActive) return
+            if (fetch.isFailed) {
+                continuation.resumeWithException(SyncFailedException(fetch))
+            } else {
+                continuation.resume(identicalFetch)
+            }
+        }
+
+        override fun onSyncAborted(syncObject: SyncObject) {
+            if (!isIdenticalFetch(syncObject)) return
+            unregisterSyncListener(this)
+            if (continuation.isActive) {
+                continuation.resumeWithException(SyncAbortedException(syncObject))
+            }
+        }
+    }
+    registerSyncListener(listener, SyncManager.DIRECT_EXECUTOR)
+    return listener
+}
+
+/**
+ * Adds the upload to the sync manager and suspends until it is done.
+ *
+ * If the coroutine is cancelled before the upload has been started it is cancelled with [SyncManager.cancel] and
+ * reverted. An upload that is already running can't be cancelled and will still be saved or reverted.
+ *
+ * @return The upload when it succeeded.
+ * @throws SyncFailedException If the upload failed. It has been reverted unless a conflicting upload was queued.
+ * @throws SyncAbortedException If the upload was aborted.
+ */
+suspend fun <T : SyncUpload> SyncManager.uploadAwait(syncUpload: T): T = suspendCancellableCoroutine { continuation ->
+    syncUpload.syncListener = object : SyncObject.SyncListenerAdapter() {
+        override fun onUploadDone(upload: SyncUpload) {
+            if (!continuation.isActive) return
+            if (upload.isFailed) {
+                continuation.resumeWithException(SyncFailedException(upload))
+            } else {
+                continuation.resume(syncUpload)
+            }
+        }
+
+        override fun onSyncAborted(syncObject: SyncObject) {
+            if (continuation.isActive) {
+                continuation.resumeWithException(SyncAbortedException(syncObject))
+            }
+        }
+    }
+    continuation.invokeOnCancellation { cancel(syncUpload) }
+    upload(syncUpload)
+}
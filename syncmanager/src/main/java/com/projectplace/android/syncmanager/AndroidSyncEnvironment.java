@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A sync environment that reads the network and battery state from the system. The app needs to declare the
+ * ACCESS_NETWORK_STATE permission to use this.
+ * <p/>
+ * The system broadcasts are only listened to while the environment is attached to a sync manager.
+ */
+public class AndroidSyncEnvironment implements SyncEnvironment {
+    private final Context mContext;
+    private final ConnectivityManager mConnectivityManager;
+    private volatile OnChangeListener mListener;
+    private volatile boolean mCharging;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                boolean charging = isCharging(intent);
+                if (charging == mCharging) {
+                    // Battery changed is sent on every level change, only notify when charging changes
+                    return;
+                }
+                mCharging = charging;
+            }
+            OnChangeListener listener = mListener;
+            if (listener != null) {
+                listener.onSyncEnvironmentChanged();
+            }
+        }
+    };
+
+    public AndroidSyncEnvironment(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mConnectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    // NetworkCapabilities of the active network needs API 23, the min SDK is 16
+    @SuppressWarnings("deprecation")
+    @Override
+    public boolean isConnected() {
+        NetworkInfo activeNetworkInfo = mConnectivityManager.getActiveNetworkInfo();
+        return activeNetworkInfo != null && activeNetworkInfo.isConnected();
+    }
+
+    @Override
+    public boolean isUnmetered() {
+        return !mConnectivityManager.isActiveNetworkMetered();
+    }
+
+    @Override
+    public boolean isCharging() {
+        return mCharging;
+    }
+
+    // ConnectivityManager.NetworkCallback needs API 21, the min SDK is 16. The broadcast is still delivered to receivers
+    // registered at runtime.
+    @SuppressWarnings("deprecation")
+    @Override
+    public void setOnChangeListener(@Nullable OnChangeListener listener) {
+        if (mListener != null) {
+            mContext.unregisterReceiver(mReceiver);
+        }
+        mListener = listener;
+        if (listener != null) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+            filter.addAction(Intent.ACTION_BATTERY_CHANGED);
+            // Battery changed is sticky so the current state is returned directly
+            Intent batteryStatus = mContext.registerReceiver(mReceiver, filter);
+            mCharging = batteryStatus != null && isCharging(batteryStatus);
+        }
+    }
+
+    private static boolean isCharging(@NonNull Intent batteryStatus) {
+        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+}
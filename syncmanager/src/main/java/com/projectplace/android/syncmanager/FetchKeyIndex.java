@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded index from a fetch key to a long value, for example the time of the last successful fetch.
+ * When the index is full the least recently used key is evicted. This class is not thread safe.
+ */
+final class FetchKeyIndex {
+    private static final int DEFAULT_MAX_SIZE = 512;
+
+    /**
+     * Decides which keys {@link #removeKeys(KeyFilter)} removes.
+     */
+    interface KeyFilter {
+        boolean matches(@NonNull String key);
+    }
+
+    private final LinkedHashMap<String, Long> mIndex;
+
+    FetchKeyIndex() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    FetchKeyIndex(final int maxSize) {
+        mIndex = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    long get(@NonNull String key, long defaultValue) {
+        Long value = mIndex.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    void put(@NonNull String key, long value) {
+        mIndex.put(key, value);
+    }
+
+    void remove(@NonNull String key) {
+        mIndex.remove(key);
+    }
+
+    void removeKeys(@NonNull KeyFilter filter) {
+        Iterator<String> keys = mIndex.keySet().iterator();
+        while (keys.hasNext()) {
+            if (filter.matches(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    void clear() {
+        mIndex.clear();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A sync environment where the conditions are set manually. This is useful in tests or when the app already keeps
+ * track of the device state itself. By default the device is seen as connected, unmetered and charging.
+ */
+public class LocalSyncEnvironment implements SyncEnvironment {
+    private volatile boolean mConnected = true;
+    private volatile boolean mUnmetered = true;
+    private volatile boolean mCharging = true;
+    private volatile OnChangeListener mListener;
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public boolean isUnmetered() {
+        return mUnmetered;
+    }
+
+    @Override
+    public boolean isCharging() {
+        return mCharging;
+    }
+
+    @Override
+    public void setOnChangeListener(@Nullable OnChangeListener listener) {
+        mListener = listener;
+    }
+
+    public void setConnected(boolean connected) {
+        mConnected = connected;
+        notifyChanged();
+    }
+
+    public void setUnmetered(boolean unmetered) {
+        mUnmetered = unmetered;
+        notifyChanged();
+    }
+
+    public void setCharging(boolean charging) {
+        mCharging = charging;
+        notifyChanged();
+    }
+
+    private void notifyChanged() {
+        OnChangeListener listener = mListener;
+        if (listener != null) {
+            listener.onSyncEnvironmentChanged();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+
+/**
+ * Keeps one circuit per endpoint. A circuit opens after a number of consecutive failures and then lets no sync object of
+ * the endpoint start until the open duration has passed. After that it is half open and lets a single sync object start
+ * as a probe. If the probe succeeds the circuit closes, otherwise it opens again. While half open, results of sync
+ * objects other than the probe are ignored.
+ * <p/>
+ * This class is not thread safe, all calls must be made with the sync lock of the sync manager held.
+ */
+final class SyncCircuitBreaker {
+    interface Listener {
+        void onCircuitStateChanged(@NonNull String endpointKey, int state);
+    }
+
+    private static final class Circuit {
+        int mState = SyncManager.CIRCUIT_CLOSED;
+        int mFailures;
+        long mOpenedTime;
+        SyncObject mProbe;
+    }
+
+    private final HashMap<String, Circuit> mCircuits = new HashMap<>();
+    private final int mFailureThreshold;
+    private final long mOpenDuration;
+    private final Listener mListener;
+
+    SyncCircuitBreaker(int failureThreshold, long openDuration, @NonNull Listener listener) {
+        mFailureThreshold = failureThreshold;
+        mOpenDuration = openDuration;
+        mListener = listener;
+    }
+
+    @NonNull
+    static String getEndpointKey(@NonNull SyncObject syncObject) {
+        String endpointKey = syncObject.getEndpointKey();
+        return endpointKey != null ? endpointKey : syncObject.getClass().getName();
+    }
+
+    /**
+     * @return True if the sync object can be started, false if it should be failed as its circuit is open.
+     */
+    boolean allowStart(@NonNull SyncObject syncObject) {
+        String endpointKey = getEndpointKey(syncObject);
+        Circuit circuit = mCircuits.get(endpointKey);
+        if (circuit == null || circuit.mState == SyncManager.CIRCUIT_CLOSED) {
+            return true;
+        }
+        if (circuit.mState == SyncManager.CIRCUIT_OPEN) {
+            if (SystemClock.elapsedRealtime() - circuit.mOpenedTime < mOpenDuration) {
+                return false;
+            }
+            setState(endpointKey, circuit, SyncManager.CIRCUIT_HALF_OPEN);
+        } else if (circuit.mProbe != null && circuit.mProbe.getQueueState() == SyncQueue.STATE_IN_FLIGHT) {
+            // Only one probe at a time
+            return false;
+        }
+        // A new probe, also if the previous one was cancelled without a result
+        circuit.mProbe = syncObject;
+        return true;
+    }
+
+    void onSuccess(@NonNull SyncObject syncObject) {
+        String endpointKey = getEndpointKey(syncObject);
+        Circuit circuit = mCircuits.get(endpointKey);
+        if (circuit == null || isStraggler(circuit, syncObject)) {
+            return;
+        }
+        if (circuit.mState != SyncManager.CIRCUIT_CLOSED) {
+            setState(endpointKey, circuit, SyncManager.CIRCUIT_CLOSED);
+        }
+        // A closed circuit without failures is the same as no circuit
+        mCircuits.remove(endpointKey);
+    }
+
+    void onFailure(@NonNull SyncObject syncObject) {
+        String endpointKey = getEndpointKey(syncObject);
+        Circuit circuit = mCircuits.get(endpointKey);
+        if (circuit == null) {
+            circuit = new Circuit();
+            mCircuits.put(endpointKey, circuit);
+        } else if (isStraggler(circuit, syncObject)) {
+            return;
+        }
+        circuit.mFailures++;
+        if (circuit.mState == SyncManager.CIRCUIT_HALF_OPEN
+                || circuit.mState == SyncManager.CIRCUIT_CLOSED && circuit.mFailures >= mFailureThreshold) {
+            circuit.mOpenedTime = SystemClock.elapsedRealtime();
+            circuit.mProbe = null;
+            setState(endpointKey, circuit, SyncManager.CIRCUIT_OPEN);
+        }
+    }
+
+    /**
+     * @return True if the circuit is half open and the sync object is not its probe. Such an object started before the
+     * circuit opened and its result says nothing about whether the endpoint has recovered.
+     */
+    private static boolean isStraggler(@NonNull Circuit circuit, @NonNull SyncObject syncObject) {
+        return circuit.mState == SyncManager.CIRCUIT_HALF_OPEN && circuit.mProbe != syncObject;
+    }
+
+    private void setState(@NonNull String endpointKey, @NonNull Circuit circuit, int state) {
+        circuit.mState = state;
+        mListener.onCircuitStateChanged(endpointKey, state);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The error of a sync object that was failed without being started because the circuit of its endpoint was open.
+ *
+ * @see SyncManager#setCircuitBreaker(int, long)
+ */
+public class SyncCircuitOpenException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final String mEndpointKey;
+
+    public SyncCircuitOpenException(@NonNull String endpointKey) {
+        super("Circuit of " + endpointKey + " is open");
+        mEndpointKey = endpointKey;
+    }
+
+    @NonNull
+    public String getEndpointKey() {
+        return mEndpointKey;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+
+/**
+ * An adaptive limit of how many sync objects can run at the same time, adjusted with additive increase and
+ * multiplicative decrease. The limit grows by about one for every limit's worth of sync objects that finish with a
+ * latency close to the lowest latency seen, and is halved when a sync object fails, times out or takes much longer than
+ * that. Only one decrease is made for all the sync objects that were started before the previous decrease, so a burst of
+ * failures caused by the same congestion doesn't collapse the limit.
+ * <p/>
+ * This class is not thread safe, all calls must be made with the sync lock of the sync manager held.
+ */
+final class SyncConcurrencyLimit {
+    // A latency above the baseline times this is seen as a spike
+    private static final double SPIKE_RATIO = 2.0;
+    private static final double BACKOFF_RATIO = 0.5;
+    // How fast the baseline follows latencies that are higher than it, so it recovers when the network changes
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int mMinLimit;
+    private final int mMaxLimit;
+    private double mLimit;
+    private double mBaselineLatency;
+    private long mLastDecreaseTime;
+
+    SyncConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+        mLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    int getLimit() {
+        return (int) mLimit;
+    }
+
+    /**
+     * @param startTime The time the sync object was started.
+     * @param latency   How long the sync object ran.
+     */
+    void onSuccess(long startTime, long latency) {
+        if (mBaselineLatency == 0 || latency < mBaselineLatency) {
+            mBaselineLatency = Math.max(1, latency);
+        } else {
+            mBaselineLatency += (latency - mBaselineLatency) * BASELINE_DRIFT;
+        }
+
+        if (latency > mBaselineLatency * SPIKE_RATIO) {
+            decrease(startTime);
+        } else {
+            mLimit = Math.min(mMaxLimit, mLimit + 1 / mLimit);
+        }
+    }
+
+    /**
+     * A sync object failed or timed out.
+     *
+     * @param startTime The time the sync object was started.
+     */
+    void onFailure(long startTime) {
+        decrease(startTime);
+    }
+
+    private void decrease(long startTime) {
+        if (startTime < mLastDecreaseTime) {
+            // Already decreased for this round
+            return;
+        }
+        mLimit = Math.max(mMinLimit, mLimit * BACKOFF_RATIO);
+        mLastDecreaseTime = SystemClock.elapsedRealtime();
+    }
+}
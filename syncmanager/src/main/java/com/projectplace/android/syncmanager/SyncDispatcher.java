@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * Starts the sync objects of one or more sync managers from a single dispatch thread.
+ * <p/>
+ * By default every sync manager creates its own dispatcher. If the app has several accounts or workspaces, one sync
+ * manager can be created per account with the same dispatcher. Each sync manager then works as a shard with its own
+ * queue, lock, access token handling and upload barrier, so a failed token refresh or an ongoing upload in one account
+ * doesn't block the others, while the number of threads stays the same no matter how many accounts there are.
+ * <p/>
+ * The dispatch thread visits the shards in turn and starts at most one sync object per shard on each turn, so a shard
+ * with a lot of queued sync objects can't starve the others. It only holds the lock of the shard it is visiting, so
+ * adding and completing sync objects in one shard never waits for another shard. The thread stops when the last shard
+ * has been removed and is started again when a shard is woken up.
+ *
+ * @see SyncManager#SyncManager(android.content.Context, SyncDispatcher)
+ */
+public final class SyncDispatcher {
+    private final Object mLock = new Object();
+    private final ArrayList<SyncManager> mShards = new ArrayList<>();
+    private final SyncTimerWheel mTimerWheel = new SyncTimerWheel("SyncDispatcher Timer");
+    private DispatchThread mDispatchThread;
+    // Set when a shard is woken up, so a wake up during a turn is not lost
+    private boolean mWakeUpPending;
+
+    @NonNull
+    SyncTimerWheel getTimerWheel() {
+        return mTimerWheel;
+    }
+
+    /**
+     * Adds the shard if it is not already added and wakes up the dispatch thread.
+     */
+    void wakeUp(@NonNull SyncManager shard) {
+        synchronized (mLock) {
+            if (!mShards.contains(shard)) {
+                mShards.add(shard);
+            }
+            if (mDispatchThread == null) {
+                mDispatchThread = new DispatchThread();
+                mDispatchThread.start();
+            }
+            mWakeUpPending = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Removes a stopped shard. The dispatch thread keeps running for the other shards and stops if there are none.
+     */
+    void remove(@NonNull SyncManager shard) {
+        synchronized (mLock) {
+            mShards.remove(shard);
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * The dispatch thread starts sync objects as soon as they are added to a shard. If no shard has a sync object that
+     * can be started, the thread pauses until a shard wakes it up or until the first delayed sync object can be started.
+     */
+    private class DispatchThread extends Thread {
+        private int mNextShard;
+
+        DispatchThread() {
+            super("SyncDispatcher");
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                SyncManager[] shards;
+                synchronized (mLock) {
+                    if (mShards.isEmpty()) {
+                        mDispatchThread = null;
+                        return;
+                    }
+                    // Copy the shards as a shard can be stopped while it is dispatching
+                    shards = mShards.toArray(new SyncManager[0]);
+                    mWakeUpPending = false;
+                }
+
+                // Each shard is visited with only its own lock held
+                boolean dispatched = false;
+                long wakeUpTime = 0;
+                for (int i = 0; i < shards.length; i++) {
+                    SyncManager shard = shards[(mNextShard + i) % shards.length];
+                    if (shard.dispatchNext()) {
+                        dispatched = true;
+                    }
+                    long shardWakeUpTime = shard.getWakeUpTime();
+                    if (shardWakeUpTime > 0 && (wakeUpTime == 0 || shardWakeUpTime < wakeUpTime)) {
+                        wakeUpTime = shardWakeUpTime;
+                    }
+                }
+                mNextShard = (mNextShard + 1) % shards.length;
+
+                if (!dispatched) {
+                    synchronized (mLock) {
+                        if (mWakeUpPending || mShards.isEmpty()) {
+                            continue;
+                        }
+                        try {
+                            if (wakeUpTime > 0) {
+                                mLock.wait(Math.max(1, wakeUpTime - SystemClock.elapsedRealtime()));
+                            } else {
+                                mLock.wait();
+                            }
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Provides the device conditions that the sync manager checks before a sync object with constraints is started.
+ * <p/>
+ * Sync objects whose constraints are not met are held by the sync manager and released together as soon as the
+ * environment reports a change.
+ *
+ * @see SyncManager#setSyncEnvironment(SyncEnvironment)
+ * @see SyncObject#setRequiresConnectivity(boolean)
+ * @see SyncObject#setRequiresUnmeteredNetwork(boolean)
+ * @see SyncObject#setRequiresCharging(boolean)
+ */
+public interface SyncEnvironment {
+    /**
+     * Listener that is called by the environment whenever any of the conditions might have changed.
+     */
+    interface OnChangeListener {
+        void onSyncEnvironmentChanged();
+    }
+
+    /**
+     * @return True if the device has a network connection.
+     */
+    boolean isConnected();
+
+    /**
+     * @return True if the current network connection is not metered, for example Wi-Fi.
+     */
+    boolean isUnmetered();
+
+    /**
+     * @return True if the device is charging.
+     */
+    boolean isCharging();
+
+    /**
+     * Sets the listener to call when the conditions change. The sync manager sets this when the environment is
+     * attached and clears it with null when it is detached.
+     */
+    void setOnChangeListener(@Nullable OnChangeListener listener);
+}
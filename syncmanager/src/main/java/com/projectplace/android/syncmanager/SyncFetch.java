@@ -17,6 +17,7 @@
 package com.projectplace.android.syncmanager;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * This class should be subclassed for all sync requests that fetches data.
@@ -26,6 +27,14 @@ public abstract class SyncFetch extends SyncObject {
     private boolean mShouldReset;
     private boolean mIsGroupFetch;
     private int mRetries;
+    private boolean mForceFetch;
+    private boolean mFresh;
+    private boolean mUnchanged;
+    private boolean mPrefetch;
+    private volatile boolean mKeepPayload;
+    // The other fetch of a hedged pair, only touched by the sync manager with the sync lock held
+    private SyncFetch mHedgePartner;
+    private boolean mHedge;
 
     /**
      * onReset should reset the state of the fetch object. All data that has already been downloaded should be set to
@@ -46,11 +55,14 @@ public abstract class SyncFetch extends SyncObject {
 
     @Override
     void reset() {
-        super.reset();
-        if (isFailed() || !isDone()) {
+        // A failed fetch is reset to be retried and a done fetch is reset when an upload conflicts with it. The check
+        // must come before super.reset() as that clears the failed flag.
+        if (!isFailed() && !isDone()) {
             throw new RuntimeException("Can not reset a fetch that is not done or failed");
         }
+        super.reset();
         mShouldReset = false;
+        mUnchanged = false;
         onReset();
     }
 
@@ -68,6 +80,101 @@ public abstract class SyncFetch extends SyncObject {
         return mShouldReset;
     }
 
+    /**
+     * Override this to return an estimate in bytes of the data this fetch holds when it is done, for example the size of
+     * the downloaded response. The sync manager uses it to keep track of how much memory is held by fetches that are
+     * done but not yet saved and delivered to the listeners. Default is 0.
+     *
+     * @see SyncManager#getPayloadBytes()
+     */
+    public long getPayloadSize() {
+        return 0;
+    }
+
+    /**
+     * Set to true to keep the payload after the fetch has been saved and delivered. By default the payload is released
+     * with {@link #onReleasePayload()} as soon as the main thread listeners have been called, so a listener that holds
+     * on to the fetch doesn't keep all its data in memory. A listener that reads the payload later, or from its own
+     * executor, must set this before the fetch is added to the sync manager.
+     */
+    public void setKeepPayload(boolean keepPayload) {
+        mKeepPayload = keepPayload;
+    }
+
+    public boolean isKeepPayload() {
+        return mKeepPayload;
+    }
+
+    /**
+     * Override this to drop all references to the downloaded data. Called on the main thread after the fetch has been
+     * saved and all listeners have been called, unless the payload is kept. {@link #isDone()} must still return true
+     * afterwards.
+     *
+     * @see #setKeepPayload(boolean)
+     */
+    protected void onReleasePayload() {
+    }
+
+    void releasePayload() {
+        if (!mKeepPayload) {
+            onReleasePayload();
+        }
+    }
+
+    /**
+     * Override this to return true if the fetch can be run twice at the same time without any harm, which is needed for
+     * it to be hedged. Default is false.
+     *
+     * @see #onCreateHedge()
+     * @see SyncManager#setHedging(double, double)
+     */
+    public boolean isIdempotent() {
+        return false;
+    }
+
+    /**
+     * Override this together with {@link #isIdempotent()} to let the sync manager start a duplicate of a fetch that
+     * takes unusually long. The first of the two that is done is saved and delivered to the listeners, while the other
+     * one is cancelled and never saved. Default is null which means the fetch is never hedged. Called on the main thread.
+     *
+     * @return A new fetch that fetches the same data as this one.
+     */
+    @Nullable
+    protected SyncFetch onCreateHedge() {
+        return null;
+    }
+
+    void setHedgePartner(@Nullable SyncFetch hedgePartner) {
+        mHedgePartner = hedgePartner;
+    }
+
+    @Nullable
+    SyncFetch getHedgePartner() {
+        return mHedgePartner;
+    }
+
+    void setHedge(boolean hedge) {
+        mHedge = hedge;
+    }
+
+    /**
+     * @return True if this fetch is a duplicate that was started because the original fetch took too long.
+     */
+    public boolean isHedge() {
+        return mHedge;
+    }
+
+    void setPrefetch(boolean prefetch) {
+        mPrefetch = prefetch;
+    }
+
+    /**
+     * @return True if the fetch was added with {@link SyncManager#prefetch(SyncFetch)}.
+     */
+    public boolean isPrefetch() {
+        return mPrefetch;
+    }
+
     boolean isIsGroupFetch() {
         return mIsGroupFetch;
     }
@@ -87,4 +194,75 @@ public abstract class SyncFetch extends SyncObject {
     public boolean willFetchSameData(@NonNull SyncFetch object) {
         return false;
     }
+
+    /**
+     * Override this to return a key that identifies the data this fetch downloads, for example "items" or "item_12".
+     * The sync manager remembers when a fetch with the same key was last saved to be able to skip fetches of data that
+     * was just downloaded. Default is null which means the fetch is always done.
+     *
+     * @see #getMinRefetchInterval()
+     */
+    @Nullable
+    public String getFetchKey() {
+        return null;
+    }
+
+    /**
+     * Override this to set the minimum time in milliseconds between two fetches with the same {@link #getFetchKey()}.
+     * If a fetch is added within this time since the last successful fetch, it is completed directly without being
+     * started and {@link #isFresh()} will return true. Default is 0 which means the fetch is always done.
+     */
+    public long getMinRefetchInterval() {
+        return 0;
+    }
+
+    /**
+     * Set to true to always start the fetch even if the data was recently fetched.
+     *
+     * @see #getMinRefetchInterval()
+     */
+    public void setForceFetch(boolean forceFetch) {
+        mForceFetch = forceFetch;
+    }
+
+    public boolean isForceFetch() {
+        return mForceFetch;
+    }
+
+    /**
+     * @return True if the fetch was completed without being started because the data was recently fetched. A fresh fetch
+     * has no data and has not been saved.
+     */
+    public boolean isFresh() {
+        return mFresh;
+    }
+
+    void setFresh(boolean fresh) {
+        mFresh = fresh;
+    }
+
+    /**
+     * Override this to return a cheap digest of the fetched data, for example a hash of the response body or its ETag, to
+     * skip the save when the data has not changed. The sync manager remembers the last digest of each
+     * {@link #getFetchKey()} and if a successful fetch has the same digest as the last one with its key, {@link #onSave()}
+     * is not called and {@link #isUnchanged()} will return true. As uploads change the local data, the digests of the
+     * keys an upload touches are forgotten when it is prepared, saved or reverted, see
+     * {@link SyncUpload#shouldResetFetchKey(String)}. Called after the fetch is done. Default is 0 which means the fetch
+     * is always saved.
+     */
+    public long getContentDigest() {
+        return 0;
+    }
+
+    /**
+     * @return True if the fetched data had the same {@link #getContentDigest()} as the last time and was not saved. The
+     * listeners are still called, so they can skip reloading what they show.
+     */
+    public boolean isUnchanged() {
+        return mUnchanged;
+    }
+
+    void setUnchanged(boolean unchanged) {
+        mUnchanged = unchanged;
+    }
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * A fetch that downloads a file in ranges straight to disk. The file is pre-sized and every range is written directly
+ * into a memory-mapped region of it, or through its file channel, so the heap use is the same no matter how large the
+ * file is.
+ * <p/>
+ * The completed ranges are recorded, so when the fetch is started again after a failure or after a reset caused by an
+ * upload conflict, only the ranges that are missing are requested. Use {@link #setRetries(int)} to let the sync manager
+ * resume a failed download.
+ * <p/>
+ * The file is downloaded to a partial file next to the target and is only moved to the target when the fetch is saved,
+ * so {@link #getFile()} returns null until the whole file is there.
+ */
+public abstract class SyncFetchFile extends SyncFetch {
+    public static final int DEFAULT_RANGE_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL = 250;
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread when ranges have been downloaded, at most every 250 ms and once when the last range
+         * is done.
+         *
+         * @param downloadedBytes The number of bytes downloaded.
+         * @param totalBytes      The size of the file.
+         */
+        void onProgress(@NonNull SyncFetchFile fetch, long downloadedBytes, long totalBytes);
+    }
+
+    private final File mTarget;
+    private final File mPartFile;
+    private final int mRangeSize;
+    private boolean mMemoryMapped = true;
+    // Ranges that have been written, guarded by itself as the thread of an earlier start can still be running
+    private final BitSet mCompletedRanges = new BitSet();
+    // The thread of the latest start, threads of earlier starts stop as soon as they see that it changed
+    private volatile DownloadThread mDownloadThread;
+    private volatile long mTotalBytes = -1;
+    private volatile long mDownloadedBytes;
+    private volatile boolean mComplete;
+    private volatile boolean mSaved;
+    private ProgressListener mProgressListener;
+    private long mLastProgressTime;
+
+    public SyncFetchFile(@NonNull File target) {
+        this(target, DEFAULT_RANGE_SIZE);
+    }
+
+    public SyncFetchFile(@NonNull File target, int rangeSize) {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException("Range size must be positive");
+        }
+        mTarget = target;
+        mPartFile = new File(target.getPath() + ".part");
+        mRangeSize = rangeSize;
+    }
+
+    /**
+     * Requests the size of the file from the server, for example with a HEAD request. Called on a background thread the
+     * first time the fetch is started.
+     */
+    @WorkerThread
+    protected abstract long onFetchLength() throws IOException;
+
+    /**
+     * Requests one range of the file from the server and writes it into the target buffer. Called on a background thread.
+     *
+     * @param target     The buffer to fill completely, it is backed by the file if the fetch is memory mapped.
+     * @param offset     The offset in the file of the first byte of the range.
+     * @param totalBytes The size of the file.
+     * @throws IOException If the range could not be downloaded. The fetch fails and the range is requested again if the
+     *                     fetch is retried.
+     */
+    @WorkerThread
+    protected abstract void onFetchRange(@NonNull ByteBuffer target, long offset, long totalBytes) throws IOException;
+
+    /**
+     * Called on a background thread when the complete file has been moved to its target. Override this to save a
+     * reference to the file, for example in the database.
+     */
+    @WorkerThread
+    protected void onSaveFile(@NonNull File file) {
+    }
+
+    /**
+     * Set to false to write the ranges through the file channel instead of memory-mapping them. Default is true.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        mMemoryMapped = memoryMapped;
+    }
+
+    public void setProgressListener(@Nullable ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+    /**
+     * @return The downloaded file, or null until the whole file has been downloaded and saved.
+     */
+    @Nullable
+    public File getFile() {
+        return mSaved ? mTarget : null;
+    }
+
+    public long getDownloadedBytes() {
+        return mDownloadedBytes;
+    }
+
+    /**
+     * @return The size of the file, -1 until it is known.
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    @Override
+    public void onStart() {
+        DownloadThread downloadThread = new DownloadThread();
+        mDownloadThread = downloadThread;
+        downloadThread.start();
+    }
+
+    @Override
+    public boolean isDone() {
+        return mComplete;
+    }
+
+    /**
+     * Keeps the completed ranges so the download is resumed instead of started over.
+     */
+    @Override
+    public void onReset() {
+        mComplete = false;
+    }
+
+    /**
+     * Moves the partial file to the target. Throws if it can't be moved, so the save fails.
+     */
+    @Override
+    public final void onSave() {
+        if (mPartFile.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            mTarget.delete();
+            if (!mPartFile.renameTo(mTarget)) {
+                throw new RuntimeException("Could not move " + mPartFile + " to " + mTarget);
+            }
+        }
+        mSaved = true;
+        onSaveFile(mTarget);
+    }
+
+    private void postProgress(final long downloadedBytes, final long totalBytes, boolean force) {
+        final ProgressListener progressListener = mProgressListener;
+        long now = SystemClock.elapsedRealtime();
+        if (progressListener == null || !force && now - mLastProgressTime < PROGRESS_INTERVAL) {
+            return;
+        }
+        mLastProgressTime = now;
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                progressListener.onProgress(SyncFetchFile.this, downloadedBytes, totalBytes);
+            }
+        });
+    }
+
+    private class DownloadThread extends Thread {
+        DownloadThread() {
+            super("SyncFetchFile");
+        }
+
+        private boolean shouldStop() {
+            // Failed includes timed out. A fetch that timed out can be reset and started again before this thread
+            // returns from onFetchRange(), which is why the thread also stops if it is no longer the latest.
+            return mDownloadThread != this || isFailed() || isCancelled();
+        }
+
+        private int nextMissingRange(int fromRange) {
+            synchronized (mCompletedRanges) {
+                return mCompletedRanges.nextClearBit(fromRange);
+            }
+        }
+
+        @Override
+        public void run() {
+            RandomAccessFile file = null;
+            try {
+                long totalBytes = mTotalBytes;
+                if (totalBytes < 0) {
+                    totalBytes = onFetchLength();
+                    mTotalBytes = totalBytes;
+                }
+                file = new RandomAccessFile(mPartFile, "rw");
+                if (file.length() != totalBytes) {
+                    // The partial file is new or does not match, so nothing in it can be used
+                    file.setLength(totalBytes);
+                    synchronized (mCompletedRanges) {
+                        mCompletedRanges.clear();
+                        mDownloadedBytes = 0;
+                    }
+                }
+                FileChannel channel = file.getChannel();
+                int rangeCount = (int) ((totalBytes + mRangeSize - 1) / mRangeSize);
+                ByteBuffer buffer = null;
+
+                for (int range = nextMissingRange(0); range < rangeCount && !shouldStop();
+                     range = nextMissingRange(range + 1)) {
+                    long offset = (long) range * mRangeSize;
+                    int length = (int) Math.min(mRangeSize, totalBytes - offset);
+                    ByteBuffer target;
+                    if (mMemoryMapped) {
+                        target = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+                    } else {
+                        if (buffer == null) {
+                            buffer = ByteBuffer.allocateDirect((int) Math.min(mRangeSize, totalBytes));
+                        }
+                        buffer.clear();
+                        buffer.limit(length);
+                        target = buffer;
+                    }
+
+                    onFetchRange(target, offset, totalBytes);
+                    if (target.hasRemaining()) {
+                        throw new IOException("Range at offset " + offset + " was not filled");
+                    }
+                    if (!mMemoryMapped) {
+                        target.flip();
+                        while (target.hasRemaining()) {
+                            channel.write(target, offset + target.position());
+                        }
+                    }
+                    long downloadedBytes;
+                    synchronized (mCompletedRanges) {
+                        if (shouldStop() || mCompletedRanges.get(range)) {
+                            continue;
+                        }
+                        mCompletedRanges.set(range);
+                        mDownloadedBytes += length;
+                        downloadedBytes = mDownloadedBytes;
+                    }
+                    postProgress(downloadedBytes, totalBytes, false);
+                }
+
+                synchronized (mCompletedRanges) {
+                    if (shouldStop() || mComplete) {
+                        return;
+                    }
+                    mComplete = true;
+                }
+                postProgress(totalBytes, totalBytes, true);
+                checkIfDone();
+            } catch (IOException e) {
+                if (!shouldStop()) {
+                    setError(e);
+                }
+            } finally {
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+        }
+    }
+}
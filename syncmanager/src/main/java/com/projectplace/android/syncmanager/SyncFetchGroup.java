@@ -61,6 +61,29 @@ public abstract class SyncFetchGroup extends SyncFetch {
     protected void onSaveGroup() {
     }
 
+    /**
+     * @return The sum of the payload sizes of the fetches in the group.
+     */
+    @Override
+    public long getPayloadSize() {
+        long payloadSize = 0;
+        for (SyncFetch fetch : mFetches) {
+            payloadSize += fetch.getPayloadSize();
+        }
+        return payloadSize;
+    }
+
+    /**
+     * Releases the payloads of the fetches in the group, as they are kept until the group is saved. Call through to super
+     * if overridden.
+     */
+    @Override
+    protected void onReleasePayload() {
+        for (SyncFetch fetch : mFetches) {
+            fetch.releasePayload();
+        }
+    }
+
     @Override
     public final void onReset() {
         mFetches.clear();
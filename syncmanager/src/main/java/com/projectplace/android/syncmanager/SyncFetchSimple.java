@@ -24,6 +24,7 @@ package com.projectplace.android.syncmanager;
  */
 public abstract class SyncFetchSimple<T> extends SyncFetch {
     private T mData;
+    private boolean mDone;
     private long mId;
 
     public SyncFetchSimple() {
@@ -36,11 +37,17 @@ public abstract class SyncFetchSimple<T> extends SyncFetch {
     @Override
     public void onReset() {
         mData = null;
+        mDone = false;
+    }
+
+    @Override
+    protected void onReleasePayload() {
+        mData = null;
     }
 
     @Override
     public boolean isDone() {
-        return mData != null;
+        return mDone;
     }
 
     public long getId() {
@@ -52,9 +59,14 @@ public abstract class SyncFetchSimple<T> extends SyncFetch {
      */
     protected void setData(T data) {
         mData = data;
+        mDone = data != null;
         checkIfDone();
     }
 
+    /**
+     * @return The fetched data, or null if it has been released after the fetch was saved.
+     * @see #setKeepPayload(boolean)
+     */
     public T getData() {
         return mData;
     }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Keeps the latest latencies of each sync object class to be able to tell how long a sync object of that class
+ * normally takes.
+ * <p/>
+ * This class is not thread safe, all calls must be made with the sync lock of the sync manager held.
+ */
+final class SyncLatencyTracker {
+    private static final int MAX_SAMPLES = 64;
+    // Fewer samples than this don't say enough about the latency
+    private static final int MIN_SAMPLES = 16;
+
+    private static final class Samples {
+        final long[] mLatencies = new long[MAX_SAMPLES];
+        int mCount;
+        int mNext;
+    }
+
+    private final HashMap<Class<?>, Samples> mSamples = new HashMap<>();
+
+    void record(@NonNull Class<?> syncClass, long latency) {
+        Samples samples = mSamples.get(syncClass);
+        if (samples == null) {
+            samples = new Samples();
+            mSamples.put(syncClass, samples);
+        }
+        samples.mLatencies[samples.mNext] = latency;
+        samples.mNext = (samples.mNext + 1) % MAX_SAMPLES;
+        samples.mCount = Math.min(samples.mCount + 1, MAX_SAMPLES);
+    }
+
+    /**
+     * @param percentile The percentile between 0 and 1, for example 0.95.
+     * @return The latency in milliseconds at the percentile, or -1 if there are not enough samples.
+     */
+    long getPercentile(@NonNull Class<?> syncClass, double percentile) {
+        Samples samples = mSamples.get(syncClass);
+        if (samples == null || samples.mCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] latencies = Arrays.copyOf(samples.mLatencies, samples.mCount);
+        Arrays.sort(latencies);
+        int index = (int) Math.ceil(percentile * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+    }
+
+    void clear() {
+        mSamples.clear();
+    }
+}
@@ -16,17 +16,25 @@
 
 package com.projectplace.android.syncmanager;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import android.util.Log;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Handles all sync requests that fetches and uploads data with the backend server.
@@ -44,26 +52,133 @@ import java.util.List;
  * up at the same time an upload is added, this needs to be handled so the save of the fetch is not done if the upload has
  * already executed its prepare operation.
  * <p/>
+ * The sync thread is owned by a {@link SyncDispatcher}. Several sync managers, for example one per account, can share the
+ * same dispatcher and its thread while keeping their own queues.
+ * <p/>
  * Listeners can be added to the sync manager to get callbacks of all kinds of sync request or a listener can be added
  * directly to a sync object. For uploads extra prepare and revert operations can be added to be able to do special logic
  * that is tied to the fragment.
  * <p/>
  * If the access token that is used to communicate with the backend needs to be refreshed then all sync objects are put
  * on hold until the token has been refreshed.
+ * <p/>
+ * Sync objects can have constraints such as requiring an unmetered network. If a {@link SyncEnvironment} is set, sync
+ * objects whose constraints are not met are moved to a held list so they don't block the sync thread. They are released
+ * together when the environment reports a change. Held uploads still block fetches.
  */
 public abstract class SyncManager implements SyncObject.SyncListener {
     private static final String TAG = SyncManager.class.getSimpleName();
     private boolean mLogSyncEvents;
 
-    private final ArrayList<SyncObject> mFetchList = new ArrayList<>();
-    private final ArrayList<SyncObject> mUploadList = new ArrayList<>();
-    private final ArrayList<SyncObject.SyncListener> mSyncListeners = new ArrayList<>();
+    private final SyncQueue mSyncQueue;
+    private final CopyOnWriteArrayList<ListenerRegistration> mSyncListeners = new CopyOnWriteArrayList<>();
+    private final FetchKeyIndex mLastFetchIndex = new FetchKeyIndex();
+    private final FetchKeyIndex mContentDigestIndex = new FetchKeyIndex();
     protected final Context mApplicationContext;
 
-    private final Object mSyncLock = new Object();
-    private SyncThread mSyncThread;
+    private final SyncDispatcher mSyncDispatcher;
+    private final Object mSyncLock;
+    private final SyncTimerWheel mTimerWheel;
+    private RefreshAccessTokenThread mRefreshAccessTokenThread;
     private boolean mUsesAccessToken = true;
     private boolean mSyncStopped;
+    private SyncEnvironment mSyncEnvironment;
+    private long mDefaultTimeout;
+    private SyncMetricsListener mSyncMetricsListener;
+    // Estimated bytes held by fetches that are done but not yet saved and delivered
+    private long mPayloadBytes;
+    private int mQueueCapacity;
+    private int mOverflowPolicy = OVERFLOW_REJECT;
+    private long mOverflowBlockTimeout = 5000;
+    // Uploads that have been accepted but are still being prepared before they are added to the queue
+    private int mUploadsBeingAdded;
+    private int mBlockedProducers;
+    private final SyncSaveBatcher mSaveBatcher;
+    // Null if the concurrency is not limited
+    private SyncConcurrencyLimit mFetchConcurrency;
+    private SyncConcurrencyLimit mUploadConcurrency;
+    // Null if there is no circuit breaker
+    private SyncCircuitBreaker mCircuitBreaker;
+    private final SyncLatencyTracker mLatencyTracker = new SyncLatencyTracker();
+    private double mHedgePercentile;
+    // Extra fetches allowed per started fetch, 0 if hedging is off
+    private double mHedgeBudget;
+    private double mHedgeTokens;
+    private volatile SyncSnapshot mSnapshot = SyncSnapshot.EMPTY;
+    private long mBurstWindow;
+    // The time when the sync objects held in the open burst window are started, 0 if no window is open
+    private long mBurstDeadline;
+    private final ArrayList<SyncObject> mBurst = new ArrayList<>();
+    private final ArrayList<RecurringFetch> mRecurringFetches = new ArrayList<>();
+    // Posts the callbacks of fresh fetches, the hedges and one delayed wake up for the recurring fetch that is due
+    // first, as the timer wheel is too coarse or would tick all the time
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Random mRandom = new Random();
+
+    private static final double MAX_HEDGE_TOKENS = 5;
+    private static final int EVENT_FETCH_DONE = 0;
+    private static final int EVENT_UPLOAD_DONE = 1;
+    private static final int EVENT_SYNC_ABORTED = 2;
+
+    /**
+     * Executor that calls a listener directly on the thread that completes the sync object, which is a background thread
+     * for fetches and uploads that are done. Use this for listeners that don't touch the UI.
+     *
+     * @see #registerSyncListener(SyncObject.SyncListener, Executor)
+     */
+    public static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Overflow policy that aborts the new sync object when the queue is full.
+     *
+     * @see #setQueueCapacity(int, int)
+     */
+    public static final int OVERFLOW_REJECT = 0;
+
+    /**
+     * Overflow policy that cancels the oldest queued background fetch to make room for the new sync object when the
+     * queue is full. Queued prefetches are dropped before fetches. If there is nothing to drop the new sync object is
+     * aborted.
+     *
+     * @see #setQueueCapacity(int, int)
+     */
+    public static final int OVERFLOW_DROP_OLDEST_BACKGROUND_FETCH = 1;
+
+    /**
+     * Overflow policy that blocks the thread adding the sync object until there is room in the queue, or aborts the new
+     * sync object when the block timeout runs out. The main thread is never blocked, sync objects added from the main
+     * thread are aborted directly when the queue is full.
+     *
+     * @see #setQueueCapacity(int, int)
+     * @see #setOverflowBlockTimeout(long)
+     */
+    public static final int OVERFLOW_BLOCK = 2;
+
+    /**
+     * State of a circuit that lets sync objects of its endpoint start as usual.
+     *
+     * @see #setCircuitBreaker(int, long)
+     */
+    public static final int CIRCUIT_CLOSED = 0;
+
+    /**
+     * State of a circuit that fails sync objects of its endpoint without starting them.
+     *
+     * @see #setCircuitBreaker(int, long)
+     */
+    public static final int CIRCUIT_OPEN = 1;
+
+    /**
+     * State of a circuit that lets a single sync object of its endpoint start to probe if the endpoint works again.
+     *
+     * @see #setCircuitBreaker(int, long)
+     */
+    public static final int CIRCUIT_HALF_OPEN = 2;
 
     // Test variables are static to be able to do special handling in SyncObject
     private static SyncObject.SyncListener sTestListener;
@@ -89,6 +204,119 @@ public abstract class SyncManager implements SyncObject.SyncListener {
         void refreshAccessTokenFailed(Object error, boolean abortRetries);
     }
 
+    /**
+     * Interface to implement to get events about how the sync manager handles sync objects, for example to report them
+     * to an analytics service. The callbacks can be made on any thread.
+     */
+    public interface SyncMetricsListener {
+        /**
+         * A sync object did not finish within its timeout and has been failed with a {@link TimeoutException}.
+         * It will be retried or reverted as any other failed sync object.
+         */
+        void onSyncTimedOut(@NonNull SyncObject syncObject);
+
+        /**
+         * The queue was full and a sync object has been aborted because of that. It is either the new sync object that
+         * was rejected or a queued fetch that was dropped to make room for it.
+         *
+         * @see #setQueueCapacity(int, int)
+         */
+        void onQueueOverflow(@NonNull SyncObject syncObject);
+
+        /**
+         * The circuit of an endpoint has changed state.
+         *
+         * @param endpointKey The {@link SyncObject#getEndpointKey()}, or the class name of the sync objects.
+         * @param state       One of {@link #CIRCUIT_CLOSED}, {@link #CIRCUIT_OPEN} and {@link #CIRCUIT_HALF_OPEN}.
+         * @see #setCircuitBreaker(int, long)
+         */
+        void onCircuitStateChanged(@NonNull String endpointKey, int state);
+    }
+
+    /**
+     * Interface to implement to run the save, prepare and revert work of the sync manager in batched database
+     * transactions, for example with {@code beginTransaction()}, {@code setTransactionSuccessful()} and
+     * {@code endTransaction()} of a SQLiteDatabase. Both callbacks are made on the same background thread.
+     *
+     * @see #setTransactionListener(TransactionListener)
+     */
+    public interface TransactionListener {
+        /**
+         * Starts a transaction that the following saves, prepares and reverts are made in.
+         */
+        void onBeginBatch();
+
+        /**
+         * Ends the transaction started by {@link #onBeginBatch()}.
+         *
+         * @param successful True to commit the transaction, false to roll it back.
+         */
+        void onEndBatch(boolean successful);
+    }
+
+    /**
+     * Creates the fetches of a recurring fetch.
+     *
+     * @see #registerRecurringFetch(FetchFactory, long, long, long)
+     */
+    public interface FetchFactory {
+        /**
+         * Called on the main thread every time the recurring fetch is due.
+         *
+         * @return A new fetch object, which is added as with {@link #fetch(SyncFetch)}.
+         */
+        @NonNull
+        SyncFetch createFetch();
+    }
+
+    /**
+     * A recurring fetch registered with {@link #registerRecurringFetch(FetchFactory, long, long, long)}.
+     */
+    public static final class RecurringFetch {
+        private final FetchFactory mFactory;
+        private final long mInterval;
+        private final long mFlex;
+        private final long mJitter;
+        // The latest time the next fetch is added, only touched with the sync lock held
+        private long mNextRunTime;
+
+        private RecurringFetch(@NonNull FetchFactory factory, long interval, long flex, long jitter) {
+            mFactory = factory;
+            mInterval = interval;
+            mFlex = flex;
+            mJitter = jitter;
+        }
+
+        public long getInterval() {
+            return mInterval;
+        }
+
+        public long getFlex() {
+            return mFlex;
+        }
+
+        public long getJitter() {
+            return mJitter;
+        }
+    }
+
+    /**
+     * Adapter with empty implementations of all {@link SyncMetricsListener} callbacks.
+     */
+    public static class SyncMetricsListenerAdapter implements SyncMetricsListener {
+        @Override
+        public void onSyncTimedOut(@NonNull SyncObject syncObject) {
+        }
+
+        @Override
+        public void onQueueOverflow(@NonNull SyncObject syncObject) {
+        }
+
+        @Override
+        public void onCircuitStateChanged(@NonNull String endpointKey, int state) {
+        }
+    }
+
     /**
      * Called just before a sync object is started to check for special conditions if the sync object
      * should be started. This is always called on a background thread.
@@ -119,170 +347,1501 @@ public abstract class SyncManager implements SyncObject.SyncListener {
     @WorkerThread
     protected abstract void startRefreshAccessToken(@NonNull RefreshAccessTokenCallback callback);
 
-    protected SyncManager(@NonNull Context context) {
-        mApplicationContext = context.getApplicationContext();
+    protected SyncManager(@NonNull Context context) {
+        this(context, new SyncDispatcher());
+    }
+
+    /**
+     * Creates a sync manager that shares its dispatch thread with other sync managers. Use this to create one sync
+     * manager per account or workspace, each with its own queue, access token handling and upload barrier.
+     *
+     * @param dispatcher The dispatcher that is shared by all the sync managers.
+     * @see SyncDispatcher
+     */
+    protected SyncManager(@NonNull Context context, @NonNull SyncDispatcher dispatcher) {
+        mApplicationContext = context.getApplicationContext();
+        mSyncDispatcher = dispatcher;
+        mSyncLock = new Object();
+        mSyncQueue = new SyncQueue(new SyncQueue.Listener() {
+            @Override
+            public void onQueueShrunk() {
+                notifyBlockedProducers();
+            }
+        });
+        mTimerWheel = dispatcher.getTimerWheel();
+        mSaveBatcher = new SyncSaveBatcher();
+    }
+
+    private void startSync() {
+        synchronized (mSyncLock) {
+            if (mSyncStopped) {
+                mSyncStopped = false;
+                scheduleRecurringFetches();
+            }
+            mSyncDispatcher.wakeUp(this);
+        }
+    }
+
+    public void stopSync() {
+        synchronized (mSyncLock) {
+            mSyncStopped = true;
+            for (SyncFetch syncFetch : mSyncQueue.getFetches()) {
+                cancelTimeout(syncFetch);
+                if (syncFetch.isHedge()) {
+                    // Only the original is told that the sync was stopped
+                    syncFetch.setCancelled();
+                }
+                syncFetch.setHedgePartner(null);
+            }
+            for (SyncObject syncObject : mSyncQueue.getUploads()) {
+                cancelTimeout(syncObject);
+            }
+            for (SyncObject syncObject : mSyncQueue.getPrefetches()) {
+                cancelTimeout(syncObject);
+            }
+            mSyncQueue.clear();
+            publishSnapshot();
+            mLastFetchIndex.clear();
+            mContentDigestIndex.clear();
+            mBurst.clear();
+            mBurstDeadline = 0;
+            // Recurring fetches are kept and start again with the sync
+            scheduleRecurringFetches();
+            // Blocked producers give up when the sync is stopped
+            notifyBlockedProducers();
+            mSyncDispatcher.remove(this);
+        }
+    }
+
+    // For test purposes only
+    @VisibleForTesting
+    public static void setTestListener(SyncObject.SyncListener testListener) {
+        sTestListener = testListener;
+    }
+
+    // For test purposes only
+    @VisibleForTesting
+    public static SyncObject.SyncListener getTestListener() {
+        return sTestListener;
+    }
+
+    // For test purposes only
+    @VisibleForTesting
+    public static void setTestDisableNewSyncObjects(boolean disable) {
+        sTestDisableNewSyncObjects = disable;
+    }
+
+    public void setLogsEnabled(boolean enabled) {
+        mLogSyncEvents = enabled;
+    }
+
+    /**
+     * The sync manager is designed to use an oauth access token flow by default, but
+     * you can disable this and the sync manager will ignore any access token handling.
+     *
+     * @param usesAccessToken False if the sync manager should ignore access token handling. Default is True.
+     */
+    public void setUsesAccessToken(boolean usesAccessToken) {
+        mUsesAccessToken = usesAccessToken;
+    }
+
+    /**
+     * Sets a listener to get callbacks when sync objects are finished. The callbacks for fetches and uploads are made
+     * on the main thread. {@link SyncObject.SyncListener#onSyncAborted(SyncObject)} is called directly on the thread
+     * that aborted the sync object, for example the thread that added or cancelled it or the sync thread.
+     *
+     * @see com.projectplace.android.syncmanager.SyncObject.SyncListener
+     */
+    public void registerSyncListener(@NonNull SyncObject.SyncListener listener) {
+        registerSyncListener(listener, null);
+    }
+
+    /**
+     * Sets a listener to get callbacks when sync objects are finished, with the callbacks made on the given executor.
+     * Listeners that don't touch the UI can use this to avoid the extra jump to the main thread, for example with
+     * {@link #DIRECT_EXECUTOR}. The callbacks for fetches and uploads that succeeded are made as soon as they are saved.
+     *
+     * @param executor The executor to make the callbacks on, or null to make them as described in
+     *                 {@link #registerSyncListener(SyncObject.SyncListener)}.
+     * @see com.projectplace.android.syncmanager.SyncObject.SyncListener
+     */
+    public synchronized void registerSyncListener(@NonNull SyncObject.SyncListener listener, @Nullable Executor executor) {
+        if (findListenerRegistration(listener) == null) {
+            mSyncListeners.add(new ListenerRegistration(listener, executor));
+        }
+    }
+
+    /**
+     * Unregisters a sync listener.
+     *
+     * @see SyncObject.SyncListener
+     */
+    public synchronized void unregisterSyncListener(@NonNull SyncObject.SyncListener listener) {
+        ListenerRegistration registration = findListenerRegistration(listener);
+        if (registration != null) {
+            mSyncListeners.remove(registration);
+        }
+    }
+
+    /**
+     * @return A copy of the registered sync listeners. Changing it does not register or unregister any listener.
+     */
+    public List<SyncObject.SyncListener> getRegisteredSyncListeners() {
+        ArrayList<SyncObject.SyncListener> listeners = new ArrayList<>(mSyncListeners.size());
+        for (ListenerRegistration registration : mSyncListeners) {
+            listeners.add(registration.mListener);
+        }
+        return listeners;
+    }
+
+    @Nullable
+    private ListenerRegistration findListenerRegistration(@NonNull SyncObject.SyncListener listener) {
+        for (ListenerRegistration registration : mSyncListeners) {
+            if (registration.mListener.equals(listener)) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calls the registered sync listeners. The listeners without an executor are called directly on the current thread,
+     * which is the main thread for the callbacks made after a save. The others are called on their executor.
+     *
+     * @param mainThreadListeners True to call the listeners without an executor, false to call the ones with an executor.
+     */
+    private void notifySyncListeners(final int event, @NonNull final SyncObject syncObject, boolean mainThreadListeners) {
+        for (final ListenerRegistration registration : mSyncListeners) {
+            if (registration.mExecutor == null) {
+                if (mainThreadListeners) {
+                    deliver(registration.mListener, event, syncObject);
+                }
+            } else if (!mainThreadListeners) {
+                registration.mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(registration.mListener, event, syncObject);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Calls all registered sync listeners from the current thread or their executor.
+     */
+    private void notifySyncListeners(int event, @NonNull SyncObject syncObject) {
+        notifySyncListeners(event, syncObject, false);
+        notifySyncListeners(event, syncObject, true);
+    }
+
+    private static void deliver(@NonNull SyncObject.SyncListener listener, int event, @NonNull SyncObject syncObject) {
+        switch (event) {
+            case EVENT_FETCH_DONE:
+                listener.onFetchDone((SyncFetch) syncObject);
+                break;
+            case EVENT_UPLOAD_DONE:
+                listener.onUploadDone((SyncUpload) syncObject);
+                break;
+            default:
+                listener.onSyncAborted(syncObject);
+                break;
+        }
+    }
+
+    /**
+     * Sets a listener to get events about how sync objects are handled.
+     *
+     * @see SyncMetricsListener
+     */
+    public void setSyncMetricsListener(@Nullable SyncMetricsListener listener) {
+        mSyncMetricsListener = listener;
+    }
+
+    /**
+     * Sets the timeout in milliseconds for sync objects that don't have their own timeout. A sync object that is started
+     * and does not finish within its timeout is failed with a {@link TimeoutException}. This prevents a sync object that
+     * never finishes from blocking the queue, for example an upload that would block all fetches forever.
+     *
+     * @param timeout The timeout in milliseconds. Default is 0 which means no timeout.
+     * @see SyncObject#getTimeoutMillis()
+     */
+    public void setDefaultTimeout(long timeout) {
+        mDefaultTimeout = timeout;
+    }
+
+    /**
+     * Sets a listener that wraps the save work of the sync manager in database transactions. The
+     * {@link SyncObject#onSave()}, {@link SyncUpload#prepare()} and {@link SyncUpload#revert()} calls that are queued
+     * while earlier ones are running are run as one batch in one transaction, in the order they were queued. If one of
+     * them throws, the batch is rolled back and run again with one transaction per call, so only the one that throws is
+     * rolled back. Its exception is logged and the sync object is failed. As the calls in a batch can then be run twice,
+     * they must not have side effects outside the database that can't be repeated.
+     *
+     * @param transactionListener The listener or null to run every call without a transaction, which is the default.
+     *                            Without a transaction listener nothing can be rolled back, so an exception thrown by
+     *                            one of the calls is not caught.
+     */
+    public void setTransactionListener(@Nullable TransactionListener transactionListener) {
+        mSaveBatcher.setTransactionListener(transactionListener);
+    }
+
+    /**
+     * Sets how long the saves of fetches and uploads wait for more work to batch with before they are run. A longer
+     * window gives larger batches, but the sync objects are saved and delivered later. Prepares and reverts never wait,
+     * they are run directly together with the saves that are waiting.
+     *
+     * @param batchWindow The window in milliseconds. Default is 0 which means only the work that is queued while earlier
+     *                    work is running is batched.
+     * @see #setTransactionListener(TransactionListener)
+     */
+    public void setBatchWindow(long batchWindow) {
+        mSaveBatcher.setBatchWindow(batchWindow);
+    }
+
+    /**
+     * Limits how many fetches and how many uploads can run at the same time with limits that adapt to the network. A
+     * limit grows while the sync objects finish with a latency close to the lowest seen, and is halved when they fail,
+     * time out or take much longer than that. Fetches and uploads have separate limits as they load the network and
+     * the server differently. Prefetches are limited by {@link #setPrefetchConcurrency(int)} only.
+     *
+     * @param maxConcurrency The highest limit. Default is 0 which means the concurrency is not limited at all.
+     */
+    public void setAdaptiveConcurrency(int maxConcurrency) {
+        synchronized (mSyncLock) {
+            if (maxConcurrency > 0) {
+                int initialLimit = Math.min(4, maxConcurrency);
+                mFetchConcurrency = new SyncConcurrencyLimit(initialLimit, 1, maxConcurrency);
+                mUploadConcurrency = new SyncConcurrencyLimit(initialLimit, 1, maxConcurrency);
+            } else {
+                mFetchConcurrency = null;
+                mUploadConcurrency = null;
+            }
+        }
+        startSync();
+    }
+
+    /**
+     * @return The current adaptive limit of fetches that can run at the same time, 0 if not limited.
+     * @see #setAdaptiveConcurrency(int)
+     */
+    public int getFetchConcurrencyLimit() {
+        synchronized (mSyncLock) {
+            return mFetchConcurrency != null ? mFetchConcurrency.getLimit() : 0;
+        }
+    }
+
+    /**
+     * @return The current adaptive limit of uploads that can run at the same time, 0 if not limited.
+     * @see #setAdaptiveConcurrency(int)
+     */
+    public int getUploadConcurrencyLimit() {
+        synchronized (mSyncLock) {
+            return mUploadConcurrency != null ? mUploadConcurrency.getLimit() : 0;
+        }
+    }
+
+    /**
+     * @return True if the sync object can be started without going over the concurrency limit. Must be called with the
+     * sync lock held.
+     */
+    private boolean hasConcurrencySlot(@NonNull SyncObject syncObject) {
+        if (syncObject instanceof SyncFetch) {
+            return ((SyncFetch) syncObject).isPrefetch() || mFetchConcurrency == null
+                    || mSyncQueue.getFetchesInFlight().size() < mFetchConcurrency.getLimit();
+        }
+        return mUploadConcurrency == null || mSyncQueue.getUploadsInFlight().size() < mUploadConcurrency.getLimit();
+    }
+
+    /**
+     * Feeds the result of a sync object that has run to its concurrency limit. Must be called with the sync lock held.
+     */
+    private void updateConcurrencyLimit(@NonNull SyncObject syncObject) {
+        SyncConcurrencyLimit limit = syncObject instanceof SyncUpload ? mUploadConcurrency
+                : ((SyncFetch) syncObject).isPrefetch() ? null : mFetchConcurrency;
+        long startTime = syncObject.getStartTime();
+        // Sync objects that were failed before they were started, or cancelled, say nothing about the network
+        if (limit == null || startTime == 0 || syncObject.isCancelled() || syncObject.isDependencyFailed()) {
+            return;
+        }
+        if (syncObject.isFailed()) {
+            limit.onFailure(startTime);
+        } else {
+            limit.onSuccess(startTime, SystemClock.elapsedRealtime() - startTime);
+        }
+    }
+
+    /**
+     * Sets a circuit breaker that stops starting sync objects of an endpoint that keeps failing. Every
+     * {@link SyncObject#getEndpointKey()}, or class if it has no key, has its own circuit. It opens after a number of
+     * failures in a row, and while it is open new sync objects of that endpoint are failed directly with a
+     * {@link SyncCircuitOpenException} without being started or retried. When the open duration has passed, a single
+     * sync object is started as a probe, which closes the circuit if it succeeds or opens it again if it fails.
+     * <p/>
+     * State changes are reported to the metrics listener.
+     *
+     * @param failureThreshold The number of failures in a row that opens a circuit, 0 to remove the circuit breaker,
+     *                         which is the default.
+     * @param openDuration     How long in milliseconds a circuit stays open before it is probed.
+     * @see SyncMetricsListener#onCircuitStateChanged(String, int)
+     */
+    public void setCircuitBreaker(int failureThreshold, long openDuration) {
+        synchronized (mSyncLock) {
+            if (failureThreshold > 0) {
+                mCircuitBreaker = new SyncCircuitBreaker(failureThreshold, openDuration, new SyncCircuitBreaker.Listener() {
+                    @Override
+                    public void onCircuitStateChanged(@NonNull String endpointKey, int state) {
+                        syncLog("Circuit of " + endpointKey + " changed state to " + state);
+                        SyncMetricsListener metricsListener = mSyncMetricsListener;
+                        if (metricsListener != null) {
+                            metricsListener.onCircuitStateChanged(endpointKey, state);
+                        }
+                    }
+                });
+            } else {
+                mCircuitBreaker = null;
+            }
+        }
+    }
+
+    /**
+     * Feeds the result of a sync object that has run to the circuit breaker. Must be called with the sync lock held.
+     */
+    private void updateCircuit(@NonNull SyncObject syncObject) {
+        if (mCircuitBreaker == null || syncObject.getStartTime() == 0 || syncObject.isCancelled()
+                || syncObject.isDependencyFailed() || syncObject.isCircuitOpen()) {
+            return;
+        }
+        if (syncObject.isFailed()) {
+            mCircuitBreaker.onFailure(syncObject);
+        } else {
+            mCircuitBreaker.onSuccess(syncObject);
+        }
+    }
+
+    /**
+     * Turns on hedging of idempotent fetches. If a fetch that can be hedged has not finished when the given percentile
+     * of the latencies of its class has passed, a duplicate is started. The first of the two to succeed is saved and
+     * delivered, the other one is cancelled and never saved. If one of them fails while the other is still running, the
+     * other one carries on.
+     * <p/>
+     * To cap the extra load, each started fetch earns the budget as a fraction of a hedge, so a budget of 0.05 allows at
+     * most one hedge per 20 fetches over time.
+     *
+     * @param percentile The latency percentile after which a fetch is hedged, for example 0.95.
+     * @param budget     The fraction of extra fetches that hedging may add, 0 to turn hedging off, which is the default.
+     * @see SyncFetch#isIdempotent()
+     * @see SyncFetch#onCreateHedge()
+     */
+    public void setHedging(double percentile, double budget) {
+        synchronized (mSyncLock) {
+            mHedgePercentile = percentile;
+            mHedgeBudget = budget;
+            mHedgeTokens = 0;
+        }
+    }
+
+    /**
+     * Schedules a hedge of a fetch that has just been started, if it can be hedged and its class has enough latency
+     * samples. Must be called with the sync lock held.
+     */
+    private void scheduleHedge(@NonNull SyncObject syncObject) {
+        if (mHedgeBudget <= 0 || !(syncObject instanceof SyncFetch) || ((SyncFetch) syncObject).isHedge()) {
+            return;
+        }
+        final SyncFetch fetch = (SyncFetch) syncObject;
+        mHedgeTokens = Math.min(MAX_HEDGE_TOKENS, mHedgeTokens + mHedgeBudget);
+        // Fetches in a group are left alone as the group only knows about the original fetch
+        if (!fetch.isIdempotent() || fetch.isPrefetch() || fetch.isIsGroupFetch() || fetch.getHedgePartner() != null) {
+            return;
+        }
+        long delay = mLatencyTracker.getPercentile(fetch.getClass(), mHedgePercentile);
+        if (delay < 0) {
+            return;
+        }
+        // The hedge delay is often below the 500 ms tick of the timer wheel
+        mMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                startHedge(fetch);
+            }
+        }, delay);
+    }
+
+    private void startHedge(@NonNull SyncFetch fetch) {
+        synchronized (mSyncLock) {
+            if (mSyncStopped || fetch.getQueueState() != SyncQueue.STATE_IN_FLIGHT || fetch.isFailed() || fetch.isDone()
+                    || fetch.getHedgePartner() != null || mHedgeTokens < 1) {
+                return;
+            }
+            SyncFetch hedge = fetch.onCreateHedge();
+            if (hedge == null) {
+                return;
+            }
+            syncLog("(Hedge) " + fetch.getClass().getSimpleName() + " is slow, start a duplicate");
+            mHedgeTokens -= 1;
+            hedge.setHedge(true);
+            hedge.setRetries(0);
+            // The hedge might be the one that is delivered
+            hedge.setSyncListener(fetch.getSyncListener());
+            hedge.setHedgePartner(fetch);
+            fetch.setHedgePartner(hedge);
+            hedge.setManagerSyncListener(this);
+            mSyncQueue.addFetch(hedge);
+            startSync();
+        }
+    }
+
+    /**
+     * Settles a hedged pair when one of them is done. The first one to succeed wins and the other one is cancelled
+     * without any callbacks. A failed one is dropped if the other one is still running.
+     *
+     * @return True if the done fetch was dropped and should be ignored.
+     */
+    private boolean resolveHedge(@NonNull SyncFetch syncFetch) {
+        synchronized (mSyncLock) {
+            SyncFetch partner = syncFetch.getHedgePartner();
+            if (partner == null) {
+                return false;
+            }
+            syncFetch.setHedgePartner(null);
+            partner.setHedgePartner(null);
+            boolean partnerRunning = partner.getQueueState() != SyncQueue.STATE_NONE && !partner.isCancelled();
+            if (syncFetch.isFailed() && partnerRunning) {
+                syncLog("(Hedge) " + syncFetch.getClass().getSimpleName() + " failed, let the other one carry on");
+                if (!syncFetch.isHedge()) {
+                    takeOverFromOriginal(partner, syncFetch);
+                }
+                dropHedgeLoser(syncFetch);
+                return true;
+            }
+            if (syncFetch.isHedge()) {
+                takeOverFromOriginal(syncFetch, partner);
+            }
+            if (partnerRunning) {
+                dropHedgeLoser(partner);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lets a hedge be delivered in place of the original fetch. Must be called with the sync lock held.
+     */
+    private void takeOverFromOriginal(@NonNull SyncFetch hedge, @NonNull SyncFetch original) {
+        hedge.setRetries(original.getRetries());
+        original.transferDependents(hedge);
+        original.setSyncListener(null);
+        // Only the original points at the hedge, so cancelling the original cancels the hedge that took over
+        original.setHedgePartner(hedge);
+    }
+
+    /**
+     * Unlinks a fetch from its hedge when the fetch is cancelled. A running hedge is dropped without callbacks. Must be
+     * called with the sync lock held.
+     *
+     * @return The sync object to cancel, which is the hedge if it has taken over from the original fetch.
+     */
+    @NonNull
+    private SyncObject detachHedge(@NonNull SyncFetch fetch) {
+        SyncFetch partner = fetch.getHedgePartner();
+        if (partner == null) {
+            return fetch;
+        }
+        fetch.setHedgePartner(null);
+        if (partner.getHedgePartner() != fetch) {
+            return partner;
+        }
+        partner.setHedgePartner(null);
+        if (partner.getQueueState() != SyncQueue.STATE_NONE) {
+            syncLog("(Hedge) Cancel the other fetch of " + fetch.getClass().getSimpleName());
+            dropHedgeLoser(partner);
+        }
+        return fetch;
+    }
+
+    /**
+     * Cancels the losing fetch of a hedged pair without any callbacks. Must be called with the sync lock held.
+     */
+    private void dropHedgeLoser(@NonNull SyncFetch loser) {
+        loser.setCancelled();
+        mSyncQueue.remove(loser);
+        cancelTimeout(loser);
+    }
+
+    /**
+     * Limits how many fetches, uploads and prefetches can be queued at the same time, so a producer that adds sync
+     * objects faster than they can be synced doesn't grow the queue without bound. Sync objects that are done and only
+     * waiting to be saved are not counted. Every overflow is reported to the metrics listener.
+     * <p/>
+     * Prefetches are always aborted when the queue is full, whatever the policy.
+     *
+     * @param capacity       The maximum number of queued sync objects. Default is 0 which means no limit.
+     * @param overflowPolicy What to do when the queue is full, one of {@link #OVERFLOW_REJECT},
+     *                       {@link #OVERFLOW_DROP_OLDEST_BACKGROUND_FETCH} and {@link #OVERFLOW_BLOCK}.
+     * @see SyncMetricsListener#onQueueOverflow(SyncObject)
+     */
+    public void setQueueCapacity(int capacity, int overflowPolicy) {
+        synchronized (mSyncLock) {
+            mQueueCapacity = capacity;
+            mOverflowPolicy = overflowPolicy;
+            // Blocked producers might fit now
+            mSyncLock.notifyAll();
+        }
+    }
+
+    /**
+     * Sets how long a producer is blocked by {@link #OVERFLOW_BLOCK} before its sync object is aborted.
+     *
+     * @param timeout The timeout in milliseconds. Default is 5000.
+     */
+    public void setOverflowBlockTimeout(long timeout) {
+        synchronized (mSyncLock) {
+            mOverflowBlockTimeout = timeout;
+        }
+    }
+
+    private int getQueueSize() {
+        return mSyncQueue.getFetches().size() + mSyncQueue.getUploads().size() + mSyncQueue.getPrefetches().size()
+                + mUploadsBeingAdded;
+    }
+
+    private boolean isQueueFull() {
+        return mQueueCapacity > 0 && getQueueSize() >= mQueueCapacity;
+    }
+
+    /**
+     * Makes room in the queue for a new sync object according to the overflow policy. If there is no room the overflow
+     * is reported, but the caller must abort the new sync object. Must be called with the sync lock held.
+     *
+     * @return True if the new sync object can be added.
+     */
+    private boolean reserveQueueSpace(@NonNull SyncObject syncObject) {
+        if (!isQueueFull()) {
+            return true;
+        }
+        if (mOverflowPolicy == OVERFLOW_DROP_OLDEST_BACKGROUND_FETCH) {
+            SyncFetch oldestFetch = findOldestBackgroundFetch();
+            if (oldestFetch != null) {
+                syncLog("Queue is full, drop " + oldestFetch.getClass().getSimpleName());
+                cancel(oldestFetch);
+                reportQueueOverflow(oldestFetch);
+                return true;
+            }
+        } else if (mOverflowPolicy == OVERFLOW_BLOCK && Looper.myLooper() != Looper.getMainLooper() && waitForQueueSpace()) {
+            return true;
+        }
+        syncLog("Queue is full, reject " + syncObject.getClass().getSimpleName());
+        reportQueueOverflow(syncObject);
+        return false;
+    }
+
+    @Nullable
+    private SyncFetch findOldestBackgroundFetch() {
+        for (SyncFetch prefetch : mSyncQueue.getPrefetches()) {
+            if (!prefetch.isStarted()) {
+                return prefetch;
+            }
+        }
+        for (SyncFetch fetch : mSyncQueue.getFetches()) {
+            // Fetches in a group are left alone as the group can't finish without them
+            if (fetch.isBackgroundSync() && !fetch.isStarted() && !fetch.isIsGroupFetch()) {
+                return fetch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits until there is room in the queue or the block timeout runs out. Must be called with the sync lock held,
+     * which is released while waiting.
+     *
+     * @return True if there is room in the queue.
+     */
+    private boolean waitForQueueSpace() {
+        long deadline = SystemClock.elapsedRealtime() + mOverflowBlockTimeout;
+        mBlockedProducers++;
+        try {
+            while (isQueueFull() && !mSyncStopped) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                mSyncLock.wait(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            mBlockedProducers--;
+        }
+    }
+
+    /**
+     * Wakes up the producers that are blocked by a full queue so they check if there is room now. Called whenever the
+     * queue shrinks or the sync is stopped.
+     */
+    private void notifyBlockedProducers() {
+        synchronized (mSyncLock) {
+            if (mBlockedProducers > 0) {
+                mSyncLock.notifyAll();
+            }
+        }
+    }
+
+    private void reportQueueOverflow(@NonNull SyncObject syncObject) {
+        SyncMetricsListener metricsListener = mSyncMetricsListener;
+        if (metricsListener != null) {
+            metricsListener.onQueueOverflow(syncObject);
+        }
+    }
+
+    /**
+     * Starts the timeout of a sync object that is about to start. Must be called with the sync lock held.
+     */
+    private void scheduleTimeout(@NonNull final SyncObject syncObject) {
+        long timeout = syncObject.getTimeoutMillis() > 0 ? syncObject.getTimeoutMillis() : mDefaultTimeout;
+        if (timeout <= 0) {
+            return;
+        }
+        final long timeoutMillis = timeout;
+        syncObject.setTimeout(mTimerWheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mSyncLock) {
+                    // Only time out if the sync object is still running and has not just finished
+                    if (syncObject.getQueueState() != SyncQueue.STATE_IN_FLIGHT || syncObject.isFailed() || syncObject.isDone()) {
+                        return;
+                    }
+                    syncObject.setTimeout(null);
+                }
+                syncLog("(Timeout) " + syncObject.getClass().getSimpleName() + " did not finish within " + timeoutMillis + " ms");
+                syncObject.setError(new TimeoutException(syncObject.getClass().getSimpleName() + " timed out after " + timeoutMillis + " ms"));
+                SyncMetricsListener metricsListener = mSyncMetricsListener;
+                if (metricsListener != null) {
+                    metricsListener.onSyncTimedOut(syncObject);
+                }
+            }
+        }, timeoutMillis));
+    }
+
+    private void cancelTimeout(@NonNull SyncObject syncObject) {
+        SyncTimerWheel.Timeout timeout = syncObject.getTimeout();
+        if (timeout != null) {
+            mTimerWheel.cancel(timeout);
+            syncObject.setTimeout(null);
+        }
+    }
+
+    /**
+     * Sets the environment that is used to check the constraints of sync objects before they are started. If no
+     * environment is set, which is the default, all constraints are ignored.
+     * <p/>
+     * An upload that is held by its constraints keeps blocking fetches like any other queued upload, except the
+     * fetches it depends on.
+     *
+     * @param environment The environment to use or null to ignore constraints. Any held sync objects are released.
+     * @see SyncObject#setRequiresConnectivity(boolean)
+     * @see SyncObject#setRequiresUnmeteredNetwork(boolean)
+     * @see SyncObject#setRequiresCharging(boolean)
+     */
+    public void setSyncEnvironment(@Nullable SyncEnvironment environment) {
+        synchronized (mSyncLock) {
+            if (mSyncEnvironment != null) {
+                mSyncEnvironment.setOnChangeListener(null);
+            }
+            mSyncEnvironment = environment;
+            if (environment != null) {
+                environment.setOnChangeListener(new SyncEnvironment.OnChangeListener() {
+                    @Override
+                    public void onSyncEnvironmentChanged() {
+                        releaseHeldSyncObjects();
+                    }
+                });
+            }
+        }
+        releaseHeldSyncObjects();
+    }
+
+    private boolean areConstraintsMet(@NonNull SyncObject sync) {
+        SyncEnvironment environment = mSyncEnvironment;
+        if (environment == null) {
+            return true;
+        }
+        if ((sync.requiresConnectivity() || sync.requiresUnmeteredNetwork()) && !environment.isConnected()) {
+            return false;
+        }
+        if (sync.requiresUnmeteredNetwork() && !environment.isUnmetered()) {
+            return false;
+        }
+        return !sync.requiresCharging() || environment.isCharging();
+    }
+
+    /**
+     * Moves all held sync objects whose constraints are now met back to the sync queue and wakes the sync thread once.
+     */
+    private void releaseHeldSyncObjects() {
+        synchronized (mSyncLock) {
+            if (mSyncQueue.getHeld().isEmpty()) {
+                return;
+            }
+            boolean released = false;
+            for (SyncObject sync : new ArrayList<>(mSyncQueue.getHeld())) {
+                if (areConstraintsMet(sync)) {
+                    mSyncQueue.requeue(sync);
+                    released = true;
+                }
+            }
+            syncLog("Released held sync objects, still held: " + mSyncQueue.getHeld().size());
+            if (released) {
+                startSync();
+            }
+        }
+    }
+
+    @Nullable
+    private SyncFetch findIdenticalFetch(@NonNull SyncFetch fetch) {
+        synchronized (mSyncLock) {
+            for (SyncFetch tmpFetch : mSyncQueue.getFetches()) {
+                // A hedge can be cancelled at any time, the original carries the duplicates
+                if (!tmpFetch.isHedge() && tmpFetch.willFetchSameData(fetch)) {
+                    return tmpFetch;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Registers a new sync object with those of its dependencies that are not done yet, so it waits for them in the sync
+     * queue. Must be called with the sync lock held before the sync object is added to the sync queue.
+     *
+     * @return A dependency that has already failed, or null if none has.
+     */
+    @Nullable
+    private SyncObject registerDependencies(@NonNull SyncObject syncObject) {
+        for (SyncObject dependency : syncObject.getDependencies()) {
+            int result = dependency.getDependencyResult();
+            if (result == SyncObject.DEPENDENCY_FAILED) {
+                return dependency;
+            } else if (result == SyncObject.DEPENDENCY_PENDING) {
+                dependency.addDependent(syncObject);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells the sync objects waiting for a sync object that it is done. If it succeeded the ones that have no more
+     * pending dependencies are released, otherwise they are all failed.
+     */
+    private void resolveDependents(@NonNull SyncObject syncObject, boolean succeeded) {
+        boolean released = false;
+        synchronized (mSyncLock) {
+            List<SyncObject> dependents = syncObject.resolveDependents(succeeded ? SyncObject.DEPENDENCY_SUCCEEDED : SyncObject.DEPENDENCY_FAILED);
+            for (SyncObject dependent : dependents) {
+                if (succeeded) {
+                    released |= mSyncQueue.releaseWaiting(dependent);
+                } else {
+                    failDependent(dependent, syncObject);
+                }
+            }
+        }
+        if (released) {
+            startSync();
+        }
+    }
+
+    /**
+     * Fails a queued sync object without starting it as one of its dependencies did not succeed. Must be called with the
+     * sync lock held.
+     */
+    private void failDependent(@NonNull SyncObject dependent, @NonNull SyncObject dependency) {
+        if (dependent.getQueueState() == SyncQueue.STATE_NONE || dependent.isFailed()) {
+            return;
+        }
+        syncLog("Dependency " + dependency.getClass().getSimpleName() + " did not succeed, fail " + dependent.getClass().getSimpleName());
+        if (dependent instanceof SyncFetch) {
+            // Retrying is pointless as the dependency will not succeed
+            ((SyncFetch) dependent).setRetries(0);
+        }
+        dependent.setError(new SyncDependencyException(dependency));
+    }
+
+    /**
+     * @return True if a fetch with the same fetch key succeeded within the minimum refetch interval of the fetch.
+     * Fetches in a group are never seen as fresh as the group needs their data.
+     */
+    private boolean isFresh(@NonNull SyncFetch fetch) {
+        String fetchKey = fetch.getFetchKey();
+        long minRefetchInterval = fetch.getMinRefetchInterval();
+        if (fetchKey == null || minRefetchInterval <= 0 || fetch.isForceFetch() || fetch.isIsGroupFetch()) {
+            return false;
+        }
+        synchronized (mSyncLock) {
+            long lastFetched = mLastFetchIndex.get(fetchKey, -1);
+            return lastFetched >= 0 && SystemClock.elapsedRealtime() - lastFetched < minRefetchInterval;
+        }
+    }
+
+    /**
+     * Completes a fetch as fresh without starting it. Called with the sync lock held, so the listeners without an
+     * executor are called from the main thread afterwards, as for a fetch that was saved.
+     */
+    private void onFetchFresh(@NonNull final SyncFetch syncFetch) {
+        syncFetch.setFresh(true);
+        resolveDependents(syncFetch, true);
+        if (sTestListener != null) {
+            sTestListener.onFetchDone(syncFetch);
+        }
+        notifySyncListeners(EVENT_FETCH_DONE, syncFetch, false);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifySyncListeners(EVENT_FETCH_DONE, syncFetch, true);
+                if (syncFetch.getSyncListener() != null) {
+                    syncFetch.getSyncListener().onFetchDone(syncFetch);
+                    syncFetch.setSyncListener(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The estimated number of bytes held by fetches that are done but not yet saved and delivered to the
+     * listeners, as reported by {@link SyncFetch#getPayloadSize()}.
+     */
+    public long getPayloadBytes() {
+        synchronized (mSyncLock) {
+            return mPayloadBytes;
+        }
+    }
+
+    /**
+     * Returns an immutable view of every queued, in flight and completing sync object, for diagnostics screens and
+     * watchdogs. This only reads the latest published snapshot and never takes a lock, so it can be polled from any
+     * thread, also while the sync lock is held by a stuck callback.
+     * <p/>
+     * A new snapshot is published by the thread that changes the queue, while it still holds the sync lock: when the
+     * dispatch thread has started what it can, and when a sync object has completed or been cancelled. Changes in
+     * between, for example a burst of added sync objects, are published together, so compare
+     * {@link SyncSnapshot#getTime()} with the current time to see how old the snapshot is.
+     */
+    @NonNull
+    public SyncSnapshot snapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Publishes a new snapshot if the queue has changed since the last one. Must be called with the sync lock held.
+     */
+    private void publishSnapshot() {
+        if (mSnapshot.getVersion() != mSyncQueue.getVersion()) {
+            mSnapshot = takeSnapshot();
+        }
+    }
+
+    /**
+     * Must be called with the sync lock held.
+     */
+    @NonNull
+    private SyncSnapshot takeSnapshot() {
+        long now = SystemClock.elapsedRealtime();
+        ArrayList<SyncSnapshot.Entry> entries = new ArrayList<>();
+        addSnapshotEntries(entries, mSyncQueue.getUploads(), now);
+        addSnapshotEntries(entries, mSyncQueue.getFetches(), now);
+        addSnapshotEntries(entries, mSyncQueue.getPrefetches(), now);
+        addSnapshotEntries(entries, mSyncQueue.getCompleting(), now);
+        return new SyncSnapshot(mSyncQueue.getVersion(), now, entries);
+    }
+
+    private void addSnapshotEntries(@NonNull List<SyncSnapshot.Entry> entries,
+                                    @NonNull Collection<? extends SyncObject> syncObjects, long now) {
+        for (SyncObject syncObject : syncObjects) {
+            int state = syncObject.getQueueState();
+            int waitReason = SyncSnapshot.WAIT_NONE;
+            if (state == SyncQueue.STATE_READY) {
+                if (mRefreshAccessTokenThread != null && mUsesAccessToken && syncObject.needsAccessToken()) {
+                    waitReason = SyncSnapshot.WAIT_ACCESS_TOKEN;
+                } else if (syncObject instanceof SyncFetch && mSyncQueue.isBehindFetchBarrier((SyncFetch) syncObject)) {
+                    waitReason = SyncSnapshot.WAIT_UPLOADS;
+                }
+            } else if (state == SyncQueue.STATE_DELAYED && mBurstDeadline > 0
+                    && syncObject.getEarliestStartTime() == mBurstDeadline) {
+                waitReason = SyncSnapshot.WAIT_BURST;
+            }
+            int retries = syncObject instanceof SyncFetch ? ((SyncFetch) syncObject).getRetries() : 0;
+            entries.add(new SyncSnapshot.Entry(syncObject.getClass(), state, waitReason,
+                    now - syncObject.getQueuedTime(), retries));
+        }
+    }
+
+    /**
+     * Forgets when the data of a fetch key was last fetched so the next fetch with that key is started even if it is
+     * within its minimum refetch interval, and saved even if its content digest has not changed. This can be used when
+     * the data is known to have changed on the server or when the saved data has been cleared.
+     *
+     * @param fetchKey The fetch key to forget or null to forget all keys.
+     * @see SyncFetch#getMinRefetchInterval()
+     * @see SyncFetch#getContentDigest()
+     */
+    public void invalidateFetchKey(@Nullable String fetchKey) {
+        synchronized (mSyncLock) {
+            if (fetchKey != null) {
+                mLastFetchIndex.remove(fetchKey);
+                mContentDigestIndex.remove(fetchKey);
+            } else {
+                mLastFetchIndex.clear();
+                mContentDigestIndex.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds a fetch object to the sync queue. The fetch will be started as soon as possible.
+     * If an upload object is running it will hold until that is finished first.
+     * <p/>
+     * If the fetch has a fetch key and a fetch with the same key succeeded within the minimum refetch interval the fetch
+     * is completed directly as fresh, unless it is forced.
+     *
+     * @see SyncFetch
+     * @see SyncFetch#getMinRefetchInterval()
+     */
+    public void fetch(@NonNull SyncFetch newFetch) {
+        fetchAll(Collections.singletonList(newFetch));
+    }
+
+    /**
+     * Adds several fetch objects to the sync queue at once. This is the same as calling {@link #fetch(SyncFetch)} for
+     * each fetch, but the sync queue is only locked once and the sync thread is only woken up once.
+     *
+     * @see #fetch(SyncFetch)
+     */
+    public void fetchAll(@NonNull Collection<? extends SyncFetch> newFetches) {
+        synchronized (mSyncLock) {
+            boolean added = false;
+            for (SyncFetch newFetch : newFetches) {
+                if (!sTestDisableNewSyncObjects || newFetch.isIsGroupFetch()) {
+                    added |= addFetch(newFetch);
+                }
+            }
+            if (added) {
+                preemptPrefetches();
+                startSync();
+            }
+        }
+    }
+
+    /**
+     * Adds a speculative fetch, for example of the next page of a list, that is only started while the sync manager has
+     * nothing else to do. As soon as a fetch or upload is added, all running prefetches are cancelled and no new ones
+     * are started until the sync manager is idle again. A prefetch is never reset by an upload, it is aborted instead.
+     * <p/>
+     * Prefetches are skipped if the data is fresh or an identical fetch or prefetch is already queued, and a fetch that
+     * is identical to a queued prefetch replaces it.
+     *
+     * @see #setPrefetchConcurrency(int)
+     */
+    public void prefetch(@NonNull SyncFetch prefetch) {
+        synchronized (mSyncLock) {
+            if (sTestDisableNewSyncObjects) {
+                return;
+            }
+            syncLog("(Prefetch) New " + prefetch.getClass().getSimpleName());
+            if (isFresh(prefetch)) {
+                syncLog("(Prefetch) Data was recently fetched, complete as fresh");
+                onFetchFresh(prefetch);
+            } else if (findIdenticalFetch(prefetch) != null || findIdenticalPrefetch(prefetch) != null) {
+                syncLog("(Prefetch) Equal fetch object found, don't add");
+                onSyncAborted(prefetch);
+            } else if (isQueueFull()) {
+                syncLog("(Prefetch) Queue is full, don't add");
+                reportQueueOverflow(prefetch);
+                onSyncAborted(prefetch);
+            } else {
+                prefetch.setPrefetch(true);
+                prefetch.setManagerSyncListener(this);
+                SyncObject failedDependency = registerDependencies(prefetch);
+                mSyncQueue.addPrefetch(prefetch);
+                if (failedDependency != null) {
+                    failDependent(prefetch, failedDependency);
+                }
+                startSync();
+            }
+        }
+    }
+
+    /**
+     * Sets how many prefetches may run at the same time while the sync manager is idle. Default is 1.
+     *
+     * @see #prefetch(SyncFetch)
+     */
+    public void setPrefetchConcurrency(int prefetchConcurrency) {
+        synchronized (mSyncLock) {
+            mSyncQueue.setPrefetchConcurrency(prefetchConcurrency);
+        }
+        startSync();
+    }
+
+    @Nullable
+    private SyncFetch findIdenticalPrefetch(@NonNull SyncFetch fetch) {
+        for (SyncFetch prefetch : mSyncQueue.getPrefetches()) {
+            if (prefetch.willFetchSameData(fetch)) {
+                return prefetch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cancels all running prefetches so they don't compete with new fetches and uploads. Must be called with the sync
+     * lock held.
+     */
+    private void preemptPrefetches() {
+        for (SyncFetch prefetch : new ArrayList<>(mSyncQueue.getPrefetchesInFlight())) {
+            syncLog("(Prefetch) Cancel " + prefetch.getClass().getSimpleName() + " as there is other work to do");
+            cancel(prefetch);
+        }
     }
 
-    private void startSync() {
+    /**
+     * Registers a fetch that is added again and again, for example to refresh a list, instead of using a timer of its own.
+     * All recurring fetches of the sync manager share one delayed wake up on the main thread, which is only scheduled for
+     * the fetch that is due first, so nothing runs between the fetches. The first fetch is added one interval after the
+     * registration, and every fetch after that one interval after the previous one was added.
+     * <p/>
+     * The fetches go through the same checks as {@link #fetch(SyncFetch)}, so a fetch is completed as fresh or dropped
+     * if the same data was recently fetched or an identical fetch is queued. If the timer is late, for example because
+     * the device was asleep, the missed fetches are coalesced into one. While the sync is stopped no fetches are added.
+     *
+     * @param factory  Creates a new fetch every time the recurring fetch is due.
+     * @param interval Milliseconds between the fetches.
+     * @param flex     Milliseconds before it is due that the fetch may be added together with another recurring fetch
+     *                 that is due, so they are started in the same burst. Capped to the interval.
+     * @param jitter   Up to this many random milliseconds are added to each interval, so recurring fetches registered
+     *                 at the same time drift apart instead of all being due together.
+     * @return The registration to pass to {@link #unregisterRecurringFetch(RecurringFetch)}.
+     */
+    @NonNull
+    public RecurringFetch registerRecurringFetch(@NonNull FetchFactory factory, long interval, long flex, long jitter) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        RecurringFetch recurringFetch = new RecurringFetch(factory, interval, Math.max(0, Math.min(flex, interval)),
+                Math.max(0, jitter));
         synchronized (mSyncLock) {
-            mSyncStopped = false;
-            if (mSyncThread == null) {
-                mSyncThread = new SyncThread();
-                mSyncThread.start();
-            }
-            mSyncLock.notify();
+            recurringFetch.mNextRunTime = getNextRunTime(recurringFetch, SystemClock.elapsedRealtime());
+            mRecurringFetches.add(recurringFetch);
+            scheduleRecurringFetches();
         }
+        return recurringFetch;
     }
 
-    public void stopSync() {
+    /**
+     * Stops adding the fetches of a recurring fetch. Fetches that have already been added are not cancelled.
+     */
+    public void unregisterRecurringFetch(@NonNull RecurringFetch recurringFetch) {
         synchronized (mSyncLock) {
-            mSyncStopped = true;
-            mFetchList.clear();
-            mUploadList.clear();
-            mSyncLock.notify();
-            mSyncThread = null;
+            if (mRecurringFetches.remove(recurringFetch)) {
+                scheduleRecurringFetches();
+            }
         }
     }
 
-    // For test purposes only
-    @VisibleForTesting
-    public static void setTestListener(SyncObject.SyncListener testListener) {
-        sTestListener = testListener;
+    private long getNextRunTime(@NonNull RecurringFetch recurringFetch, long now) {
+        long jitter = recurringFetch.mJitter > 0 ? (long) (mRandom.nextDouble() * recurringFetch.mJitter) : 0;
+        return now + recurringFetch.mInterval + jitter;
     }
 
-    // For test purposes only
-    @VisibleForTesting
-    public static SyncObject.SyncListener getTestListener() {
-        return sTestListener;
+    /**
+     * Schedules the timer for the recurring fetch that is due first. Must be called with the sync lock held.
+     */
+    private void scheduleRecurringFetches() {
+        mMainHandler.removeCallbacks(mRunRecurringFetches);
+        if (mSyncStopped || mRecurringFetches.isEmpty()) {
+            return;
+        }
+        long nextRunTime = Long.MAX_VALUE;
+        for (RecurringFetch recurringFetch : mRecurringFetches) {
+            nextRunTime = Math.min(nextRunTime, recurringFetch.mNextRunTime);
+        }
+        mMainHandler.postDelayed(mRunRecurringFetches, Math.max(0, nextRunTime - SystemClock.elapsedRealtime()));
     }
 
-    // For test purposes only
-    @VisibleForTesting
-    public static void setTestDisableNewSyncObjects(boolean disable) {
-        sTestDisableNewSyncObjects = disable;
+    private final Runnable mRunRecurringFetches = new Runnable() {
+        @Override
+        public void run() {
+            List<FetchFactory> dueFactories = new ArrayList<>();
+            synchronized (mSyncLock) {
+                if (mSyncStopped) {
+                    return;
+                }
+                long now = SystemClock.elapsedRealtime();
+                for (RecurringFetch recurringFetch : mRecurringFetches) {
+                    if (recurringFetch.mNextRunTime - recurringFetch.mFlex <= now) {
+                        dueFactories.add(recurringFetch.mFactory);
+                        // Counting from now instead of from when it was due coalesces the missed ticks
+                        recurringFetch.mNextRunTime = getNextRunTime(recurringFetch, now);
+                    }
+                }
+                scheduleRecurringFetches();
+            }
+            if (!dueFactories.isEmpty()) {
+                syncLog("(Recurring) Add " + dueFactories.size() + " due fetches");
+                List<SyncFetch> fetches = new ArrayList<>(dueFactories.size());
+                for (FetchFactory factory : dueFactories) {
+                    fetches.add(factory.createFetch());
+                }
+                fetchAll(fetches);
+            }
+        }
+    };
+
+    /**
+     * Sets how many milliseconds background sync objects may be held after they have been added, so those that are added
+     * close together are started in one burst instead of waking up the radio again and again. The window opens when the
+     * first background sync object is added and all background sync objects added before it ends are started together
+     * when it ends. A foreground sync object ends the window directly, and nothing is held while other sync objects are
+     * running as the radio is already awake. Default is 0 which means background sync objects are never held.
+     *
+     * @see SyncObject#getBurstWindow()
+     * @see SyncObject#setIsBackgroundSync(boolean)
+     */
+    public void setBurstWindow(long burstWindow) {
+        synchronized (mSyncLock) {
+            mBurstWindow = burstWindow;
+        }
     }
 
-    public void setLogsEnabled(boolean enabled) {
-        mLogSyncEvents = enabled;
+    /**
+     * Holds a new sync object until the end of the burst window if it is a background sync object, otherwise ends the
+     * window. Must be called with the sync lock held before the sync object is added to the sync queue.
+     */
+    private void applyBurstWindow(@NonNull SyncObject syncObject) {
+        long now = SystemClock.elapsedRealtime();
+        if (mBurstDeadline > 0 && mBurstDeadline <= now) {
+            // The window has ended and its sync objects have been released by the sync queue
+            mBurst.clear();
+            mBurstDeadline = 0;
+        }
+        if (!syncObject.isBackgroundSync() || !mSyncQueue.getFetchesInFlight().isEmpty()
+                || !mSyncQueue.getUploadsInFlight().isEmpty()) {
+            flushBurst();
+            return;
+        }
+        long window = syncObject.getBurstWindow() >= 0 ? syncObject.getBurstWindow() : mBurstWindow;
+        // Sync objects that are already delayed, for example debounced uploads, are left alone
+        if (window <= 0 || syncObject.getEarliestStartTime() > now) {
+            return;
+        }
+        long deadline = now + window;
+        if (mBurstDeadline == 0 || deadline < mBurstDeadline) {
+            // A shorter window pulls the whole burst forward
+            for (SyncObject held : mBurst) {
+                if (held.getQueueState() == SyncQueue.STATE_DELAYED && held.getEarliestStartTime() == mBurstDeadline) {
+                    held.setEarliestStartTime(deadline);
+                    mSyncQueue.requeue(held);
+                }
+            }
+            mBurstDeadline = deadline;
+        }
+        syncObject.setEarliestStartTime(mBurstDeadline);
+        mBurst.add(syncObject);
     }
 
     /**
-     * The sync manager is designed to use an oauth access token flow by default, but
-     * you can disable this and the sync manager will ignore any access token handling.
-     *
-     * @param usesAccessToken False if the sync manager should ignore access token handling. Default is True.
+     * Releases all sync objects held in the burst window. Must be called with the sync lock held.
      */
-    public void setUsesAccessToken(boolean usesAccessToken) {
-        mUsesAccessToken = usesAccessToken;
+    private void flushBurst() {
+        if (mBurst.isEmpty()) {
+            return;
+        }
+        syncLog("(Burst) Start " + mBurst.size() + " held sync objects");
+        for (SyncObject held : mBurst) {
+            if (held.getQueueState() == SyncQueue.STATE_DELAYED && held.getEarliestStartTime() == mBurstDeadline) {
+                held.setEarliestStartTime(0);
+                mSyncQueue.requeue(held);
+            }
+        }
+        mBurst.clear();
+        mBurstDeadline = 0;
     }
 
     /**
-     * Sets a listener to get callbacks when sync objects are finished.
+     * Adds the fetch to the fetch list. Must be called with the sync lock held.
      *
-     * @see com.projectplace.android.syncmanager.SyncObject.SyncListener
+     * @return True if the fetch was added, false if it was completed or aborted directly.
      */
-    public void registerSyncListener(@NonNull SyncObject.SyncListener listener) {
-        if (!mSyncListeners.contains(listener)) {
-            mSyncListeners.add(listener);
+    private boolean addFetch(@NonNull SyncFetch newFetch) {
+        syncLog("(Fetch) New " + newFetch.getClass().getSimpleName());
+        // If the same data was just fetched or there already exists an identical fetch object in the fetch list
+        // then don't add it to gain performance.
+        if (isFresh(newFetch)) {
+            syncLog("(Fetch) Data was recently fetched, complete as fresh");
+            onFetchFresh(newFetch);
+            return false;
+        }
+        SyncFetch identicalFetch = findIdenticalFetch(newFetch);
+        SyncFetch identicalPrefetch = identicalFetch == null ? findIdenticalPrefetch(newFetch) : null;
+        if (identicalPrefetch != null && !identicalPrefetch.isStarted()) {
+            syncLog("(Fetch) Replace equal prefetch " + identicalPrefetch.getClass().getSimpleName());
+            mSyncQueue.remove(identicalPrefetch);
+            identicalPrefetch.transferDependents(newFetch);
+            onSyncAborted(identicalPrefetch);
+        }
+        if (identicalFetch == null) {
+            // The fetches of a group are added by the group while it runs, which already holds a place in the queue.
+            // The group can't finish if they are aborted and must not block the dispatch thread.
+            if (!newFetch.isIsGroupFetch() && !reserveQueueSpace(newFetch)) {
+                onSyncAborted(newFetch);
+                return false;
+            }
+            newFetch.setManagerSyncListener(this);
+            newFetch.setHedgePartner(null);
+            if (!newFetch.isIsGroupFetch()) {
+                applyBurstWindow(newFetch);
+            }
+            SyncObject failedDependency = registerDependencies(newFetch);
+            mSyncQueue.addFetch(newFetch);
+            if (failedDependency != null) {
+                failDependent(newFetch, failedDependency);
+            }
+            return true;
+        } else {
+            syncLog("(Fetch) Equal fetch object found, don't add");
+            if (!newFetch.isBackgroundSync()) {
+                // The identical fetch might be held in the burst window
+                flushBurst();
+            }
+            // Whatever waits for the new fetch can wait for the identical one instead
+            newFetch.transferDependents(identicalFetch);
+            onSyncAborted(newFetch);
+            return false;
         }
     }
 
     /**
-     * Unregisters a sync listener.
-     *
-     * @see SyncObject.SyncListener
+     * Removes all queued uploads that have not been started and that are superseded by the new upload.
+     * Must be called with the sync lock held.
      */
-    public void unregisterSyncListener(@NonNull SyncObject.SyncListener listener) {
-        mSyncListeners.remove(listener);
+    private void supersedeQueuedUploads(@NonNull SyncUpload newUpload) {
+        if (newUpload.getConflictKey() == null) {
+            return;
+        }
+        for (SyncUpload upload : new ArrayList<>(mSyncQueue.getPendingUploads(newUpload))) {
+            if (!upload.isStarted() && !newUpload.getDependencies().contains(upload) && newUpload.supersedes(upload)) {
+                syncLog("(Upload) " + upload.getClass().getSimpleName() + " superseded by " + newUpload.getClass().getSimpleName());
+                mSyncQueue.remove(upload);
+                upload.transferDependents(newUpload);
+                onSyncAborted(upload);
+            }
+        }
     }
 
-    public List<SyncObject.SyncListener> getRegisteredSyncListeners() {
-        return mSyncListeners;
+    /**
+     * @return True if the upload reports that it will not change anything. This is only trusted if no other upload with
+     * the same conflict key is queued or running, as that upload might change the value on the server.
+     */
+    private boolean isNoOpUpload(@NonNull SyncUpload upload) {
+        return upload.getConflictKey() != null && mSyncQueue.getPendingUploads(upload).size() == 1 && upload.isNoOp();
     }
 
-    private boolean containsIdenticalFetch(@NonNull SyncFetch fetch) {
-        synchronized (mSyncLock) {
-            for (int i = 0; i < mFetchList.size(); i++) {
-                SyncFetch tmpFetch = (SyncFetch) mFetchList.get(i);
-                if (tmpFetch.willFetchSameData(fetch)) {
-                    return true;
-                }
+    /**
+     * Check if there are any conflicting uploads in the queue, if there are we should not revert as that would overwrite
+     * the prepare operations of that upload. Must be called with the sync lock held.
+     */
+    private boolean hasConflictingUpload(@NonNull SyncUpload syncUpload) {
+        for (SyncUpload upload : mSyncQueue.getPendingUploads(syncUpload)) {
+            if (upload.hasConflict(syncUpload)) {
+                return true;
             }
-            return false;
         }
+        return false;
+    }
+
+    private static boolean canConflict(@NonNull SyncUpload upload, @NonNull SyncUpload other) {
+        return upload.getConflictKey() == null || upload.getConflictKey().equals(other.getConflictKey());
     }
 
     /**
-     * Adds a fetch object to the sync queue. The fetch will be started as soon as possible.
-     * If an upload object is running it will hold until that is finished first.
-     *
-     * @see SyncFetch
+     * Forgets the content digests of the fetch keys whose local data the upload changed. Called with the sync lock held.
      */
-    public void fetch(@NonNull SyncFetch newFetch) {
-        if (!sTestDisableNewSyncObjects || newFetch.isIsGroupFetch()) {
-            synchronized (mSyncLock) {
-                syncLog("(Fetch) New " + newFetch.getClass().getSimpleName());
-                // If there already exists an identical fetch object in the fetch list then don't add it to gain performance.
-                if (!containsIdenticalFetch(newFetch)) {
-                    newFetch.setManagerSyncListener(this);
-                    mFetchList.add(newFetch);
-                    startSync();
-                } else {
-                    syncLog("(Fetch) Equal fetch object found, don't add");
-                    onSyncAborted(newFetch);
-                }
+    private void invalidateContentDigests(@NonNull final SyncUpload upload) {
+        mContentDigestIndex.removeKeys(new FetchKeyIndex.KeyFilter() {
+            @Override
+            public boolean matches(@NonNull String fetchKey) {
+                return upload.shouldResetFetchKey(fetchKey);
             }
-        }
+        });
     }
 
     private void resetFetches(@NonNull SyncUpload newUpload) {
-        for (SyncObject fetch : mFetchList) {
-            if (newUpload.shouldResetFetch((SyncFetch) fetch)) {
-                ((SyncFetch) fetch).setShouldReset();
+        for (SyncFetch fetch : mSyncQueue.getFetchesInFlight()) {
+            if (newUpload.shouldResetFetch(fetch)) {
+                fetch.setShouldReset();
             }
         }
     }
 
     /**
-     * Adds an upload sync to the sync queue. The upload will be started as soon as possible.
+     * Adds an upload sync to the sync queue. The upload will be started as soon as possible. An upload that has already
+     * been run, for example one that failed, is reset so it can be added again.
      *
      * @see SyncUpload
      */
-    @SuppressLint("StaticFieldLeak")
-    public void upload(@NonNull final SyncUpload newUpload) {
-        if (!sTestDisableNewSyncObjects) {
-            synchronized (mSyncLock) {
-                syncLog("(Upload) New " + newUpload.getClass().getSimpleName());
-                newUpload.setManagerSyncListener(this);
-                // Reset all fetches so they are restarted as they might conflict with the upload
-                resetFetches(newUpload);
+    public void upload(@NonNull SyncUpload newUpload) {
+        uploadAll(Collections.singletonList(newUpload));
+    }
 
-                // If there already exists an upload of the same type, then the revert values needs to be updated
-                for (SyncObject upload : mUploadList) {
-                    newUpload.updateRevertValues((SyncUpload) upload, true);
+    /**
+     * Adds several upload objects to the sync queue at once. The uploads are prepared in the given order on the background
+     * thread and are then added to the upload queue together, which wakes up the sync thread once. An upload whose
+     * prepare throws while a transaction listener is set is aborted without affecting the others.
+     *
+     * @see #upload(SyncUpload)
+     */
+    public void uploadAll(@NonNull Collection<? extends SyncUpload> newUploads) {
+        if (!sTestDisableNewSyncObjects && !newUploads.isEmpty()) {
+            synchronized (mSyncLock) {
+                final List<SyncUpload> uploads = new ArrayList<>(newUploads.size());
+                for (SyncUpload newUpload : newUploads) {
+                    if (reserveQueueSpace(newUpload)) {
+                        uploads.add(newUpload);
+                        mUploadsBeingAdded++;
+                    } else {
+                        onSyncAborted(newUpload);
+                    }
+                }
+                if (uploads.isEmpty()) {
+                    return;
                 }
+                preemptPrefetches();
+                for (int i = 0; i < uploads.size(); i++) {
+                    SyncUpload newUpload = uploads.get(i);
+                    syncLog("(Upload) New " + newUpload.getClass().getSimpleName());
+                    if (newUpload.isStarted() && newUpload.getQueueState() == SyncQueue.STATE_NONE) {
+                        // An upload that has been run before, for example one that failed, would never be started again
+                        newUpload.reset();
+                    }
+                    newUpload.setManagerSyncListener(this);
+                    // Reset all fetches so they are restarted as they might conflict with the upload
+                    resetFetches(newUpload);
 
-                // Task has to be serial so the db operations comes in the correct order
-                new AsyncTask<Void, Void, Void>() {
-                    @Override
-                    protected Void doInBackground(Void... params) {
-                        newUpload.prepare();
-                        // Lock as we are manipulating with the upload list
-                        synchronized (mSyncLock) {
-                            mUploadList.add(newUpload);
+                    // If there already exists an upload of the same type, then the revert values needs to be updated.
+                    // This includes the uploads earlier in the same batch.
+                    for (SyncUpload upload : mSyncQueue.getPendingUploads(newUpload)) {
+                        newUpload.updateRevertValues(upload, true);
+                    }
+                    for (int j = 0; j < i; j++) {
+                        if (canConflict(newUpload, uploads.get(j))) {
+                            newUpload.updateRevertValues(uploads.get(j), true);
                         }
-                        startSync();
-                        return null;
                     }
-                }.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+                }
+
+                // Jobs are serial so the db operations comes in the correct order. Each upload is prepared in a job of
+                // its own so an upload whose prepare throws doesn't take the others with it.
+                final int[] pendingPrepares = {uploads.size()};
+                for (final SyncUpload newUpload : uploads) {
+                    mSaveBatcher.execute(new SyncSaveBatcher.Job() {
+                        @Override
+                        void doInBackground() {
+                            newUpload.prepare();
+                        }
+
+                        @Override
+                        void onCommitted(boolean successful) {
+                            boolean lastPrepare;
+                            // Lock as we are manipulating with the upload list
+                            synchronized (mSyncLock) {
+                                mUploadsBeingAdded--;
+                                notifyBlockedProducers();
+                                lastPrepare = --pendingPrepares[0] == 0;
+                                // The prepare changed the local data, so it no longer matches the last fetched content
+                                invalidateContentDigests(newUpload);
+                                if (!successful) {
+                                    // The prepare changes were rolled back so there is nothing to upload
+                                    onSyncAborted(newUpload);
+                                } else {
+                                    supersedeQueuedUploads(newUpload);
+                                    if (newUpload.getDebounceTime() > 0) {
+                                        newUpload.setEarliestStartTime(SystemClock.elapsedRealtime() + newUpload.getDebounceTime());
+                                    }
+                                    applyBurstWindow(newUpload);
+                                    SyncObject failedDependency = registerDependencies(newUpload);
+                                    mSyncQueue.addUpload(newUpload);
+                                    if (failedDependency != null) {
+                                        failDependent(newUpload, failedDependency);
+                                    }
+                                }
+                            }
+                            // Wake up the sync thread once, when all uploads of the call have been prepared
+                            if (lastPrepare) {
+                                startSync();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels a sync object that has been added to the sync manager. Listeners get
+     * {@link SyncObject.SyncListener#onSyncAborted(SyncObject)} if the sync object was cancelled.
+     * <p/>
+     * A fetch is removed from the queue and if it is running its result is ignored. An upload can only be cancelled
+     * before it has been started, it is then removed from the queue and reverted. An upload that is running can't be
+     * cancelled as its result must either be saved or reverted. If a fetch has been hedged, its hedge is cancelled too.
+     *
+     * @return True if the sync object was cancelled.
+     * @see #setHedging(double, double)
+     */
+    public boolean cancel(@NonNull SyncObject cancelledObject) {
+        final SyncObject syncObject;
+        final boolean shouldRevert;
+        synchronized (mSyncLock) {
+            syncObject = cancelledObject instanceof SyncFetch ? detachHedge((SyncFetch) cancelledObject) : cancelledObject;
+            int queueState = syncObject.getQueueState();
+            if (queueState == SyncQueue.STATE_NONE || queueState == SyncQueue.STATE_COMPLETING
+                    || queueState == SyncQueue.STATE_IN_FLIGHT && syncObject instanceof SyncUpload) {
+                return false;
             }
+            syncLog("(Cancel) " + syncObject.getClass().getSimpleName());
+            syncObject.setCancelled();
+            mSyncQueue.remove(syncObject);
+            cancelTimeout(syncObject);
+            publishSnapshot();
+            shouldRevert = syncObject instanceof SyncUpload && !hasConflictingUpload((SyncUpload) syncObject);
+        }
+
+        if (shouldRevert) {
+            // Jobs are serial so the db operations comes in the correct order
+            mSaveBatcher.execute(new SyncSaveBatcher.Job() {
+                @Override
+                void doInBackground() {
+                    ((SyncUpload) syncObject).revert();
+                }
+
+                @Override
+                void onCommitted(boolean successful) {
+                    synchronized (mSyncLock) {
+                        // The revert changed the local data, so it no longer matches the last fetched content
+                        invalidateContentDigests((SyncUpload) syncObject);
+                    }
+                }
+            });
         }
+        onSyncAborted(syncObject);
+        startPrefetchesIfIdle();
+        startSyncIfFetchesLimited();
+        return true;
     }
 
     /**
      * Internal callback when an upload is finished. This should never be called from outside of the sync manager.
      */
-    @SuppressLint("StaticFieldLeak")
     @Override
     public void onUploadDone(@NonNull final SyncUpload syncUpload) {
         // If sync is stopped we should not save anything
@@ -293,24 +1852,23 @@ public abstract class SyncManager implements SyncObject.SyncListener {
 
         synchronized (mSyncLock) {
             syncLog("(onUploadDone) " + syncUpload.getClass().getSimpleName());
-            mUploadList.remove(syncUpload);
+            cancelTimeout(syncUpload);
+            updateConcurrencyLimit(syncUpload);
+            updateCircuit(syncUpload);
+            mSyncQueue.markCompleting(syncUpload);
 
             // Need to check for conflicts outside the async task as it might be to late in doInBackground
             boolean conflict = false;
             if (syncUpload.isFailed()) {
-                // Check if there are any conflicting uploads in the queue, if there are we should not revert as
-                // that would overwrite the prepare operations of that upload.
-                for (SyncObject upload : mUploadList) {
-                    conflict = ((SyncUpload) upload).hasConflict(syncUpload);
-                }
+                conflict = hasConflictingUpload(syncUpload);
                 showError(syncUpload);
             }
             final boolean shouldRevertIfFailed = !conflict;
 
-            // Task has to be serial so the db operations comes in the correct order
-            new AsyncTask<Void, Void, Void>() {
+            // Jobs are serial so the db operations comes in the correct order
+            SyncSaveBatcher.Job job = new SyncSaveBatcher.Job() {
                 @Override
-                protected Void doInBackground(Void... params) {
+                void doInBackground() {
                     if (syncUpload.isFailed()) {
                         if (shouldRevertIfFailed) {
                             syncLog("(onUploadDone) Failed to upload, reverting");
@@ -322,30 +1880,50 @@ public abstract class SyncManager implements SyncObject.SyncListener {
                         // Lock as we are iterating the upload list
                         synchronized (mSyncLock) {
                             // Update any existing uploads of the same type with new revert values as this upload succeeded
-                            for (SyncObject upload : mUploadList) {
-                                ((SyncUpload) upload).updateRevertValues(syncUpload, false);
+                            for (SyncUpload upload : mSyncQueue.getPendingUploads(syncUpload)) {
+                                upload.updateRevertValues(syncUpload, false);
                             }
                         }
                         syncUpload.onSave();
                     }
+                }
 
+                @Override
+                void onCommitted(boolean successful) {
+                    synchronized (mSyncLock) {
+                        // The save or revert changed the local data, so it no longer matches the last fetched content
+                        invalidateContentDigests(syncUpload);
+                    }
+                    if (!successful && syncUpload.isSuccess()) {
+                        // The upload went through but its result could not be saved
+                        syncUpload.setError(getError());
+                    }
                     if (sTestListener != null) {
                         sTestListener.onUploadDone(syncUpload);
                     }
-                    return null;
+                    notifySyncListeners(EVENT_UPLOAD_DONE, syncUpload, false);
+                    resolveDependents(syncUpload, syncUpload.isSuccess());
                 }
 
                 @Override
-                protected void onPostExecute(Void aVoid) {
-                    for (SyncObject.SyncListener listener : mSyncListeners) {
-                        listener.onUploadDone(syncUpload);
+                void onPostExecute() {
+                    synchronized (mSyncLock) {
+                        mSyncQueue.finishCompleting(syncUpload);
+                        publishSnapshot();
                     }
+                    notifySyncListeners(EVENT_UPLOAD_DONE, syncUpload, true);
                     if (syncUpload.getSyncListener() != null) {
                         syncUpload.getSyncListener().onUploadDone(syncUpload);
                         syncUpload.setSyncListener(null);
                     }
                 }
-            }.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+            };
+            // Reverts are run directly, only saves wait for the batch window
+            if (syncUpload.isFailed()) {
+                mSaveBatcher.execute(job);
+            } else {
+                mSaveBatcher.executeSave(job);
+            }
         }
         startSync();
     }
@@ -353,7 +1931,6 @@ public abstract class SyncManager implements SyncObject.SyncListener {
     /**
      * Internal callback when a fetch is finished. This should never be called from outside of the sync manager.
      */
-    @SuppressLint("StaticFieldLeak")
     @Override
     public void onFetchDone(@NonNull final SyncFetch syncFetch) {
         // If sync is stopped we should not save anything
@@ -363,6 +1940,17 @@ public abstract class SyncManager implements SyncObject.SyncListener {
         }
 
         syncLog("(onFetchDone) " + syncFetch.getClass().getSimpleName());
+        synchronized (mSyncLock) {
+            cancelTimeout(syncFetch);
+            updateConcurrencyLimit(syncFetch);
+            updateCircuit(syncFetch);
+            if (syncFetch.isSuccess() && !syncFetch.isHedge() && syncFetch.getStartTime() > 0) {
+                mLatencyTracker.record(syncFetch.getClass(), SystemClock.elapsedRealtime() - syncFetch.getStartTime());
+            }
+        }
+        if (resolveHedge(syncFetch)) {
+            return;
+        }
         if (syncFetch.isFailed()) {
             // If a fetch has failed, just remove it and tell the listeners.
             // Or if it has any retries left then reset and try again.
@@ -370,36 +1958,72 @@ public abstract class SyncManager implements SyncObject.SyncListener {
                 syncLog("(onFetchDone) SyncFetch failed, retrying. Retries left: " + (syncFetch.getRetries() - 1));
                 syncFetch.reset();
                 syncFetch.setRetries(syncFetch.getRetries() - 1);
+                synchronized (mSyncLock) {
+                    mSyncQueue.requeue(syncFetch);
+                }
                 startSync();
             } else {
                 synchronized (mSyncLock) {
-                    mFetchList.remove(syncFetch);
+                    mSyncQueue.remove(syncFetch);
                 }
                 showError(syncFetch);
                 if (sTestListener != null) {
                     sTestListener.onFetchDone(syncFetch);
                 }
-                for (SyncObject.SyncListener listener : mSyncListeners) {
-                    listener.onFetchDone(syncFetch);
-                }
+                notifySyncListeners(EVENT_FETCH_DONE, syncFetch);
                 if (syncFetch.getSyncListener() != null) {
                     syncFetch.getSyncListener().onFetchDone(syncFetch);
                 }
+                resolveDependents(syncFetch, false);
             }
         } else {
+            // Fetches in a group are saved by the group and a forced fetch is always saved
+            final String fetchKey = syncFetch.getFetchKey();
+            final long contentDigest = fetchKey != null && !syncFetch.isIsGroupFetch() && !syncFetch.isForceFetch()
+                    ? syncFetch.getContentDigest() : 0;
             synchronized (mSyncLock) {
                 // When a fetch is successful first check if it is in conflict with any upload.
-                if (!syncFetch.shouldReset()) {
-                    mFetchList.remove(syncFetch);
+                if (syncFetch.isPrefetch() && (syncFetch.shouldReset() || mSyncQueue.hasUploads())) {
+                    syncLog("(onFetchDone) Prefetch might conflict with an upload, abort: " + syncFetch.getClass().getSimpleName());
+                    mSyncQueue.remove(syncFetch);
+                    onSyncAborted(syncFetch);
+                } else if (!syncFetch.shouldReset()) {
+                    mSyncQueue.markCompleting(syncFetch);
+                    if (contentDigest != 0) {
+                        syncFetch.setUnchanged(mContentDigestIndex.get(fetchKey, 0) == contentDigest);
+                        if (syncFetch.isUnchanged()) {
+                            syncLog("(onFetchDone) Content is unchanged, skip the save: " + syncFetch.getClass().getSimpleName());
+                        }
+                    }
+                    // Fetches in a group are accounted and released by the group
+                    final long payloadSize = syncFetch.isIsGroupFetch() ? 0 : syncFetch.getPayloadSize();
+                    mPayloadBytes += payloadSize;
 
-                    // Task has to be serial so the db operations comes in the correct order
-                    new AsyncTask<Void, Void, Void>() {
+                    // Jobs are serial so the db operations comes in the correct order
+                    mSaveBatcher.executeSave(new SyncSaveBatcher.Job() {
                         @Override
-                        protected Void doInBackground(Void... params) {
+                        void doInBackground() {
                             // Group fetches is saved by the SyncFetchGroup
-                            if (!syncFetch.isIsGroupFetch()) {
+                            if (!syncFetch.isIsGroupFetch() && !syncFetch.isUnchanged()) {
                                 syncFetch.onSave();
                             }
+                        }
+
+                        @Override
+                        void onCommitted(boolean successful) {
+                            if (successful) {
+                                // Only data that is saved makes the next fetch fresh or lets it skip an unchanged save
+                                synchronized (mSyncLock) {
+                                    if (fetchKey != null) {
+                                        mLastFetchIndex.put(fetchKey, SystemClock.elapsedRealtime());
+                                    }
+                                    if (contentDigest != 0) {
+                                        mContentDigestIndex.put(fetchKey, contentDigest);
+                                    }
+                                }
+                            } else {
+                                syncFetch.setError(getError());
+                            }
                             // Test listener needs to be called on background thread
                             if (sTestListener != null) {
                                 sTestListener.onFetchDone(syncFetch);
@@ -407,40 +2031,75 @@ public abstract class SyncManager implements SyncObject.SyncListener {
                                     syncFetch.getSyncListener().onFetchDone(syncFetch);
                                 }
                             }
-                            return null;
+                            notifySyncListeners(EVENT_FETCH_DONE, syncFetch, false);
+                            // The data is saved so whatever depends on it can be started
+                            resolveDependents(syncFetch, successful);
                         }
 
                         @Override
-                        protected void onPostExecute(Void isDone) {
-                            for (SyncObject.SyncListener listener : mSyncListeners) {
-                                listener.onFetchDone(syncFetch);
+                        void onPostExecute() {
+                            synchronized (mSyncLock) {
+                                mSyncQueue.finishCompleting(syncFetch);
+                                publishSnapshot();
                             }
+                            notifySyncListeners(EVENT_FETCH_DONE, syncFetch, true);
                             if (syncFetch.getSyncListener() != null) {
                                 syncFetch.getSyncListener().onFetchDone(syncFetch);
                                 syncFetch.setSyncListener(null);
                             }
+                            // The data is saved and delivered so it doesn't need to be kept in memory
+                            if (!syncFetch.isIsGroupFetch()) {
+                                syncFetch.releasePayload();
+                            }
+                            synchronized (mSyncLock) {
+                                mPayloadBytes -= payloadSize;
+                            }
                         }
-                    }.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+                    });
                 } else if(syncFetch.isIsGroupFetch()) {
                     syncLog("(onFetchDone) A conflict with an upload occurred. Remove this group fetch as it will be restarted by the group: " + syncFetch.getClass().getSimpleName());
-                    mFetchList.remove(syncFetch);
+                    mSyncQueue.remove(syncFetch);
                     syncFetch.getSyncListener().onFetchDone(syncFetch);
                 } else {
                     syncLog("(onFetchDone) A conflict with an upload occurred, reset and the fetch will be done again: " + syncFetch.getClass().getSimpleName());
                     // A conflict with an upload occurred, reset and the fetch will be done again
                     syncFetch.reset();
+                    mSyncQueue.requeue(syncFetch);
                     startSync();
                 }
             }
         }
-        syncLog("(onFetchDone) FetchList size: " + mFetchList.size());
+        syncLog("(onFetchDone) FetchList size: " + mSyncQueue.getFetches().size());
+        startPrefetchesIfIdle();
+        startSyncIfFetchesLimited();
+    }
+
+    /**
+     * Wakes up the sync thread when a fetch is no longer running, as it might have been waiting for a free fetch slot.
+     */
+    private void startSyncIfFetchesLimited() {
+        synchronized (mSyncLock) {
+            if (mFetchConcurrency != null && !mSyncStopped) {
+                startSync();
+            }
+        }
+    }
+
+    /**
+     * Wakes up the sync thread if the sync manager just became idle and there are prefetches waiting for that.
+     */
+    private void startPrefetchesIfIdle() {
+        synchronized (mSyncLock) {
+            if (!mSyncStopped && mSyncQueue.isIdle() && !mSyncQueue.getPrefetches().isEmpty()) {
+                startSync();
+            }
+        }
     }
 
     @Override
     public void onSyncAborted(@NonNull SyncObject syncObject) {
-        for (SyncObject.SyncListener listener : mSyncListeners) {
-            listener.onSyncAborted(syncObject);
-        }
+        resolveDependents(syncObject, false);
+        notifySyncListeners(EVENT_SYNC_ABORTED, syncObject);
         if (syncObject.getSyncListener() != null) {
             syncObject.getSyncListener().onSyncAborted(syncObject);
             syncObject.setSyncListener(null);
@@ -467,114 +2126,139 @@ public abstract class SyncManager implements SyncObject.SyncListener {
     }
 
     /**
-     * The sync thread will start sync objects as soon as it is added to the sync manager. However, fetch objects will
-     * not be started until all upload objects has finished. This is because we want to minimize the risk of conflicts
-     * between uploads and fetches. If no sync objects exists the sync thread pauses and waits for a new sync object.
+     * Called by the dispatcher to start the next sync object of this sync manager. Fetch objects will not be started until
+     * all upload objects has finished. This is because we want to minimize the risk of conflicts between uploads and
+     * fetches. Called on the dispatch thread, which doesn't hold the lock of any other sync manager while this is called.
+     *
+     * @return True if a sync object was handled and this method should be called again, false if there is nothing more
+     * to do until the sync manager is woken up.
      */
-    private class SyncThread extends Thread {
-        private RefreshAccessTokenThread mRefreshAccessTokenThread;
-
-        @Override
-        public void run() {
-            while (!mSyncStopped) {
-                syncLog("Sync Thread - Check for sync object");
-                synchronized (mSyncLock) {
-                    SyncObject syncObject = getNextSyncObject();
-                    if (syncObject != null && !shouldSyncObject(syncObject)) {
-                        syncLog("Sync Thread - Should not sync object, remove without callback");
-                        if (syncObject instanceof SyncFetch) {
-                            mFetchList.remove(syncObject);
-                        } else {
-                            mUploadList.remove(syncObject);
-                        }
-                        onSyncAborted(syncObject);
-                    } else if (mUsesAccessToken && syncObject != null && syncObject.needsAccessToken() && shouldRefreshAccessToken()) {
-                        syncLog("Sync Thread - Access token needs to be refreshed");
-                        if (mRefreshAccessTokenThread == null) {
-                            mRefreshAccessTokenThread = new RefreshAccessTokenThread(new RefreshAccessTokenCallback() {
-                                @Override
-                                public void refreshAccessTokenSuccess() {
-                                    mRefreshAccessTokenThread = null;
-                                    notifySyncLock();
-                                }
-
-                                @Override
-                                public void refreshAccessTokenFailed(Object error, boolean abortRetries) {
-                                    mRefreshAccessTokenThread = null;
-                                    failSyncObjectsThatNeedAccessToken(error);
-                                }
-                            });
-                            mRefreshAccessTokenThread.start();
-                        } else {
-                            syncLog("Sync Thread - Refresh access token already in progress");
-                        }
-                        waitSyncLock("Sync Thread - Wait for refresh access token to finish");
-                    } else {
-                        if (syncObject != null) {
-                            syncLog("Sync Thread - Start sync object: " + syncObject.getClass().getSimpleName());
-                            syncObject.start();
-                        }
-
-                        if (!mSyncStopped && getNextSyncObject() == null) {
-                            waitSyncLock("Sync Thread - Wait for sync objects");
-                        }
-                    }
-                }
+    boolean dispatchNext() {
+        synchronized (mSyncLock) {
+            boolean dispatched = startNext();
+            if (!dispatched) {
+                // Nothing more can be started, so the queue is stable until the sync manager is woken up again
+                publishSnapshot();
             }
+            return dispatched;
         }
+    }
 
-        private void failSyncObjectsThatNeedAccessToken(Object error) {
-            synchronized (mSyncLock) {
-                for (int i = mUploadList.size() - 1; i >= 0; i--) {
-                    SyncObject upload = mUploadList.get(i);
-                    if (upload.needsAccessToken()) {
-                        upload.setError(error);
+    /**
+     * Must be called with the sync lock held.
+     */
+    private boolean startNext() {
+        if (mSyncStopped || mRefreshAccessTokenThread != null) {
+            // While the access token is refreshed no sync objects are started
+            return false;
+        }
+
+        SyncObject syncObject = mSyncQueue.peekNext();
+        if (syncObject == null) {
+            return false;
+        } else if (syncObject.isStarted()) {
+            // Failed while queued, for example by a failed access token refresh. It is removed when the done callback
+            // is called.
+            mSyncQueue.markInFlight(syncObject);
+        } else if (!hasConcurrencySlot(syncObject)) {
+            // Woken up again when a running sync object is done
+            return false;
+        } else if (!areConstraintsMet(syncObject)) {
+            syncLog("Sync Thread - Constraints not met, hold " + syncObject.getClass().getSimpleName());
+            mSyncQueue.hold(syncObject);
+        } else if (syncObject instanceof SyncUpload && isNoOpUpload((SyncUpload) syncObject)) {
+            syncLog("Sync Thread - Upload will not change anything, remove without starting");
+            mSyncQueue.remove(syncObject);
+            // The upload is already in effect, so whatever depends on it can be started
+            resolveDependents(syncObject, true);
+            onSyncAborted(syncObject);
+        } else if (!shouldSyncObject(syncObject)) {
+            syncLog("Sync Thread - Should not sync object, remove without callback");
+            mSyncQueue.remove(syncObject);
+            onSyncAborted(syncObject);
+        } else if (mCircuitBreaker != null && !mCircuitBreaker.allowStart(syncObject)) {
+            syncLog("Sync Thread - Circuit is open, fail " + syncObject.getClass().getSimpleName());
+            mSyncQueue.markInFlight(syncObject);
+            if (syncObject instanceof SyncFetch) {
+                // Retrying would only hit the open circuit again
+                ((SyncFetch) syncObject).setRetries(0);
+            }
+            syncObject.setError(new SyncCircuitOpenException(SyncCircuitBreaker.getEndpointKey(syncObject)));
+        } else if (mUsesAccessToken && syncObject.needsAccessToken() && shouldRefreshAccessToken()) {
+            syncLog("Sync Thread - Access token needs to be refreshed");
+            mRefreshAccessTokenThread = new RefreshAccessTokenThread(new RefreshAccessTokenCallback() {
+                @Override
+                public void refreshAccessTokenSuccess() {
+                    synchronized (mSyncLock) {
+                        mRefreshAccessTokenThread = null;
+                        mSyncQueue.invalidate();
                     }
+                    startSync();
                 }
-                for (int i = mFetchList.size() - 1; i >= 0; i--) {
-                    SyncObject fetch = mFetchList.get(i);
-                    if (fetch.needsAccessToken()) {
-                        fetch.setError(error);
+
+                @Override
+                public void refreshAccessTokenFailed(Object error, boolean abortRetries) {
+                    synchronized (mSyncLock) {
+                        mRefreshAccessTokenThread = null;
+                        mSyncQueue.invalidate();
                     }
+                    failSyncObjectsThatNeedAccessToken(error);
+                    startSync();
                 }
-            }
+            });
+            mSyncQueue.invalidate();
+            mRefreshAccessTokenThread.start();
+            syncLog("Sync Thread - Wait for refresh access token to finish");
+            return false;
+        } else {
+            syncLog("Sync Thread - Start sync object: " + syncObject.getClass().getSimpleName());
+            mSyncQueue.markInFlight(syncObject);
+            scheduleTimeout(syncObject);
+            scheduleHedge(syncObject);
+            syncObject.start();
         }
+        return true;
+    }
 
-        /**
-         * @return the next sync object to start. Fetch objects can only be started if no upload objects exists.
-         */
-        private SyncObject getNextSyncObject() {
-            synchronized (mSyncLock) {
-                for (SyncObject upload : mUploadList) {
-                    if (!upload.isStarted()) {
-                        return upload;
-                    }
+    /**
+     * @return The {@link SystemClock#elapsedRealtime()} time when the dispatcher needs to check this sync manager again
+     * even if it is not woken up, 0 if not needed. Nothing is started during an access token refresh, which wakes up the
+     * dispatcher when it is done, and the wake up time of the queue is not updated while it runs.
+     */
+    long getWakeUpTime() {
+        synchronized (mSyncLock) {
+            return mSyncStopped || mRefreshAccessTokenThread != null ? 0 : mSyncQueue.getWakeUpTime();
+        }
+    }
+
+    private void failSyncObjectsThatNeedAccessToken(Object error) {
+        synchronized (mSyncLock) {
+            // Copy the lists as failing a sync object can remove it from the queue directly
+            for (SyncObject upload : new ArrayList<>(mSyncQueue.getUploads())) {
+                if (upload.needsAccessToken()) {
+                    upload.setError(error);
                 }
-                if (mUploadList.size() == 0) {
-                    for (SyncObject fetch : mFetchList) {
-                        if (!fetch.isStarted()) {
-                            return fetch;
-                        }
-                    }
+            }
+            for (SyncObject fetch : new ArrayList<SyncObject>(mSyncQueue.getPrefetches())) {
+                if (fetch.needsAccessToken()) {
+                    fetch.setError(error);
                 }
             }
-            return null;
-        }
-
-        private void waitSyncLock(String logMessage) {
-            try {
-                syncLog(logMessage);
-                mSyncLock.wait();
-            } catch (InterruptedException e) {
-                syncLog("Sync Thread - Interrupted");
-                e.printStackTrace();
+            for (SyncObject fetch : new ArrayList<>(mSyncQueue.getFetches())) {
+                if (fetch.needsAccessToken()) {
+                    fetch.setError(error);
+                }
             }
         }
+    }
 
-        private void notifySyncLock() {
-            synchronized (mSyncLock) {
-                mSyncLock.notify();
-            }
+    private static final class ListenerRegistration {
+        final SyncObject.SyncListener mListener;
+        final Executor mExecutor;
+
+        ListenerRegistration(@NonNull SyncObject.SyncListener listener, @Nullable Executor executor) {
+            mListener = listener;
+            mExecutor = executor;
         }
     }
 
@@ -18,7 +18,15 @@ package com.projectplace.android.syncmanager;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Top class of both fetch and upload sync objects.
@@ -46,6 +54,11 @@ public abstract class SyncObject {
         }
     }
 
+    // The result of a sync object as seen by the sync objects that depend on it
+    static final int DEPENDENCY_PENDING = 0;
+    static final int DEPENDENCY_SUCCEEDED = 1;
+    static final int DEPENDENCY_FAILED = 2;
+
     private SyncListener mManagerSyncListener;
     private SyncListener mSyncListener;
     private Object mError;
@@ -55,6 +68,22 @@ public abstract class SyncObject {
     private boolean mListenerCalled;
     private boolean mNeedsAccessToken = true;
     private boolean mIsBackgroundSync = true;
+    private boolean mRequiresConnectivity;
+    private boolean mRequiresUnmeteredNetwork;
+    private boolean mRequiresCharging;
+    private long mEarliestStartTime;
+    private long mStartTime;
+    private long mQueuedTime;
+    private int mQueueState = SyncQueue.STATE_NONE;
+    private SyncTimerWheel.Timeout mTimeout;
+    private volatile boolean mCancelled;
+    private final ArrayList<SyncObject> mDependencies = new ArrayList<>();
+    // The sync objects waiting for this one, only touched by the sync manager with the sync lock held
+    private ArrayList<SyncObject> mDependents;
+    private int mPendingDependencies;
+    private int mDependencyResult = DEPENDENCY_PENDING;
+    // The sync object that took over the dependents of this one, written with the sync lock held
+    private volatile SyncObject mDependencyReplacement;
 
     /**
      * Called when the sync object should save it synced data. This will always be called on a background thread
@@ -86,11 +115,62 @@ public abstract class SyncObject {
         mListenerCalled = false;
     }
 
+    /**
+     * Sets the {@link android.os.SystemClock#elapsedRealtime()} time before which the sync thread will not start this
+     * sync object. 0 means it can be started directly.
+     */
+    void setEarliestStartTime(long earliestStartTime) {
+        mEarliestStartTime = earliestStartTime;
+    }
+
+    long getEarliestStartTime() {
+        return mEarliestStartTime;
+    }
+
+    /**
+     * Sets which state this sync object is in the sync queue. Only called by {@link SyncQueue}.
+     */
+    void setQueueState(int queueState) {
+        mQueueState = queueState;
+    }
+
+    int getQueueState() {
+        return mQueueState;
+    }
+
+    void setTimeout(SyncTimerWheel.Timeout timeout) {
+        mTimeout = timeout;
+    }
+
+    SyncTimerWheel.Timeout getTimeout() {
+        return mTimeout;
+    }
+
     void start() {
         mStarted = true;
+        mStartTime = SystemClock.elapsedRealtime();
         onStart();
     }
 
+    /**
+     * @return The {@link SystemClock#elapsedRealtime()} time when the sync object was last started, 0 if never.
+     */
+    long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Sets the {@link SystemClock#elapsedRealtime()} time when the sync object was added to the sync queue. Only called
+     * by {@link SyncQueue}.
+     */
+    void setQueuedTime(long queuedTime) {
+        mQueuedTime = queuedTime;
+    }
+
+    long getQueuedTime() {
+        return mQueuedTime;
+    }
+
     private void setFailed(boolean failed) {
         mFailed = failed;
         checkIfDone();
@@ -141,7 +221,7 @@ public abstract class SyncObject {
     }
 
     private void syncDone() {
-        if (mManagerSyncListener == null) return;
+        if (mManagerSyncListener == null || mCancelled) return;
 
         if (this instanceof SyncFetch) {
             mManagerSyncListener.onFetchDone((SyncFetch) this);
@@ -177,6 +257,238 @@ public abstract class SyncObject {
         return mIsBackgroundSync;
     }
 
+    /**
+     * Override this to set how many milliseconds this sync object may be held after it has been added, so it is started
+     * in one burst together with other background sync objects. 0 means it is never held. Default is -1 which means the
+     * burst window of the sync manager is used. Only used for background sync objects.
+     *
+     * @see SyncManager#setBurstWindow(long)
+     */
+    public long getBurstWindow() {
+        return -1;
+    }
+
+    /**
+     * Set if this sync object should be held until the device has a network connection. Default is false.
+     * Constraints are only checked if a {@link SyncEnvironment} has been set on the sync manager.
+     */
+    public void setRequiresConnectivity(boolean requiresConnectivity) {
+        mRequiresConnectivity = requiresConnectivity;
+    }
+
+    public boolean requiresConnectivity() {
+        return mRequiresConnectivity;
+    }
+
+    /**
+     * Set if this sync object should be held until the device is on an unmetered network. Default is false.
+     * Constraints are only checked if a {@link SyncEnvironment} has been set on the sync manager.
+     */
+    public void setRequiresUnmeteredNetwork(boolean requiresUnmeteredNetwork) {
+        mRequiresUnmeteredNetwork = requiresUnmeteredNetwork;
+    }
+
+    public boolean requiresUnmeteredNetwork() {
+        return mRequiresUnmeteredNetwork;
+    }
+
+    /**
+     * Set if this sync object should be held until the device is charging. Default is false.
+     * Constraints are only checked if a {@link SyncEnvironment} has been set on the sync manager.
+     * <p/>
+     * A held upload is still queued, so no fetch is started until it has run, which for this constraint can be hours.
+     * Only use it on uploads if fetches can wait that long.
+     */
+    public void setRequiresCharging(boolean requiresCharging) {
+        mRequiresCharging = requiresCharging;
+    }
+
+    public boolean requiresCharging() {
+        return mRequiresCharging;
+    }
+
+    /**
+     * Override this to set how many milliseconds this sync object may run before it is failed with a
+     * {@link TimeoutException} as error. Default is 0 which means the default timeout of the sync manager is used.
+     *
+     * @see SyncManager#setDefaultTimeout(long)
+     */
+    public long getTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * @return True if the sync object failed because it did not finish within its timeout.
+     */
+    public boolean isTimedOut() {
+        return mFailed && mError instanceof TimeoutException;
+    }
+
+    /**
+     * Makes this sync object depend on another sync object. It is not started until all its dependencies have succeeded
+     * and been saved, and if any of them fails or is aborted this sync object is failed with a
+     * {@link SyncDependencyException} without being started. Sync objects that don't depend on each other are started
+     * as usual, so independent branches of a dependency graph are synced in parallel.
+     * <p/>
+     * Dependencies must be added before this sync object is given to the sync manager, and the dependencies must be
+     * given to the same sync manager, before or after this one. An upload should not depend on a fetch that conflicts
+     * with it, as the fetch would be reset for as long as the upload is queued.
+     *
+     * @param dependency The sync object that has to succeed before this one is started.
+     */
+    public void addDependency(@NonNull SyncObject dependency) {
+        if (dependency == this) {
+            throw new IllegalArgumentException("A sync object can't depend on itself");
+        }
+        if (!mDependencies.contains(dependency)) {
+            mDependencies.add(dependency);
+        }
+    }
+
+    @NonNull
+    public List<SyncObject> getDependencies() {
+        return Collections.unmodifiableList(mDependencies);
+    }
+
+    /**
+     * @return True if the sync object failed because one of its dependencies failed or was aborted.
+     */
+    public boolean isDependencyFailed() {
+        return mFailed && mError instanceof SyncDependencyException;
+    }
+
+    /**
+     * Override this to return a key of the backend endpoint this sync object calls, for example "items". The circuit
+     * breaker of the sync manager keeps one circuit per endpoint key. Default is null which means the class of the sync
+     * object is used as endpoint.
+     *
+     * @see SyncManager#setCircuitBreaker(int, long)
+     */
+    @Nullable
+    public String getEndpointKey() {
+        return null;
+    }
+
+    /**
+     * @return True if the sync object failed without being started because the circuit of its endpoint was open.
+     */
+    public boolean isCircuitOpen() {
+        return mFailed && mError instanceof SyncCircuitOpenException;
+    }
+
+    void addDependent(@NonNull SyncObject dependent) {
+        if (mDependencyReplacement != null) {
+            mDependencyReplacement.addDependent(dependent);
+            return;
+        }
+        if (mDependents == null) {
+            mDependents = new ArrayList<>();
+        }
+        mDependents.add(dependent);
+        dependent.mPendingDependencies++;
+    }
+
+    /**
+     * Sets the result of this sync object as a dependency and returns the sync objects that were waiting for it. Each of
+     * them has one less pending dependency afterwards. Does nothing if the result is already set or the dependents have
+     * been moved to another sync object, so an abort after that does not fail what depends on it.
+     */
+    @NonNull
+    List<SyncObject> resolveDependents(int result) {
+        if (mDependencyReplacement != null || mDependencyResult != DEPENDENCY_PENDING) {
+            return Collections.emptyList();
+        }
+        mDependencyResult = result;
+        if (mDependents == null) {
+            return Collections.emptyList();
+        }
+        List<SyncObject> dependents = mDependents;
+        mDependents = null;
+        for (SyncObject dependent : dependents) {
+            dependent.mPendingDependencies--;
+        }
+        return dependents;
+    }
+
+    /**
+     * Moves the sync objects waiting for this one to another sync object that will sync the same data. Sync objects that
+     * depend on this one later wait for the other one instead and get its result.
+     */
+    void transferDependents(@NonNull SyncObject syncObject) {
+        mDependencyReplacement = syncObject;
+        if (mDependents != null) {
+            for (SyncObject dependent : mDependents) {
+                dependent.mPendingDependencies--;
+                syncObject.addDependent(dependent);
+            }
+            mDependents = null;
+        }
+    }
+
+    /**
+     * @return True if an upload waits for this sync object, directly or through other sync objects.
+     */
+    boolean isNeededByUpload() {
+        ArrayList<SyncObject> pending = new ArrayList<>();
+        HashSet<SyncObject> visited = new HashSet<>();
+        pending.add(this);
+        while (!pending.isEmpty()) {
+            SyncObject syncObject = pending.remove(pending.size() - 1);
+            if (syncObject.mDependents == null || !visited.add(syncObject)) {
+                continue;
+            }
+            for (SyncObject dependent : syncObject.mDependents) {
+                if (dependent instanceof SyncUpload) {
+                    return true;
+                }
+                pending.add(dependent);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The sync object that took over from this one, or null if none has. A fetch that is aborted because an
+     * identical fetch is already queued is taken over by that fetch, and an upload that is superseded is taken over by
+     * the upload that superseded it. If the sync object that took over has itself been taken over, for example by a
+     * hedge, the last one is returned.
+     */
+    @Nullable
+    public SyncObject getReplacement() {
+        SyncObject replacement = mDependencyReplacement;
+        while (replacement != null && replacement.mDependencyReplacement != null) {
+            replacement = replacement.mDependencyReplacement;
+        }
+        return replacement;
+    }
+
+    int getDependencyResult() {
+        return mDependencyReplacement != null ? mDependencyReplacement.getDependencyResult() : mDependencyResult;
+    }
+
+    /**
+     * Forgets the result of an earlier run when the sync object is added to the sync manager again.
+     */
+    void clearDependencyResult() {
+        mDependencyResult = DEPENDENCY_PENDING;
+        mDependencyReplacement = null;
+    }
+
+    boolean hasPendingDependencies() {
+        return mPendingDependencies > 0;
+    }
+
+    void setCancelled() {
+        mCancelled = true;
+    }
+
+    /**
+     * @return True if the sync object has been cancelled with {@link SyncManager#cancel(SyncObject)}.
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
     public boolean isStarted() {
         // It is seen as started if set to started or set to failed
         return mStarted || mFailed;
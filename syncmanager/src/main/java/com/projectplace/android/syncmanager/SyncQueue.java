@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps track of all fetches and uploads of a sync manager and which state they are in. Every sync object is in exactly
+ * one state and each state has its own structure, so picking the next sync object to start, marking it as started and
+ * removing it are all done in constant time.
+ * <p/>
+ * Uploads with an ordering key are blocked until all earlier uploads with the same key are done. Only the first upload
+ * of each ordering key can be ready. Sync objects with dependencies wait until all of them have succeeded. Prefetches
+ * are kept apart from all other sync objects and are only returned while there is nothing else to do.
+ * <p/>
+ * This class is not thread safe, all calls must be made with the sync lock of the sync manager held.
+ */
+final class SyncQueue {
+    interface Listener {
+        /**
+         * Called with the sync lock held when sync objects have been removed from the queue.
+         */
+        void onQueueShrunk();
+    }
+
+    // Not in the queue
+    static final int STATE_NONE = 0;
+    // Waiting to be started
+    static final int STATE_READY = 1;
+    // Waiting for its earliest start time
+    static final int STATE_DELAYED = 2;
+    // Waiting for an earlier upload with the same ordering key
+    static final int STATE_BLOCKED = 3;
+    // Waiting for its constraints to be met
+    static final int STATE_HELD = 4;
+    // Started and waiting for the sync to be done
+    static final int STATE_IN_FLIGHT = 5;
+    // Done and waiting for the save and the listeners to be called
+    static final int STATE_COMPLETING = 6;
+    // Waiting for its dependencies to succeed
+    static final int STATE_WAITING = 7;
+    // Prefetch waiting for the sync manager to be idle
+    static final int STATE_PREFETCH = 8;
+
+    // All fetches and uploads that are not completing, in the order they were added
+    private final LinkedHashSet<SyncFetch> mFetches = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncUpload> mUploads = new LinkedHashSet<>();
+
+    private final LinkedHashSet<SyncFetch> mFetchesReady = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncUpload> mUploadsReady = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncFetch> mFetchesInFlight = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncUpload> mUploadsInFlight = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncObject> mHeld = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncObject> mCompleting = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncObject> mWaiting = new LinkedHashSet<>();
+    // All prefetches, they are not part of the fetches above
+    private final LinkedHashSet<SyncFetch> mPrefetches = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncFetch> mPrefetchesReady = new LinkedHashSet<>();
+    private final LinkedHashSet<SyncFetch> mPrefetchesInFlight = new LinkedHashSet<>();
+    private int mPrefetchConcurrency = 1;
+    // Uploads that are waiting or blocked, they don't keep fetches from being started
+    private int mUploadsWaiting;
+    private int mUploadsBlocked;
+    private final PriorityQueue<SyncObject> mDelayed = new PriorityQueue<>(11, new Comparator<SyncObject>() {
+        @Override
+        public int compare(SyncObject o1, SyncObject o2) {
+            return Long.compare(o1.getEarliestStartTime(), o2.getEarliestStartTime());
+        }
+    });
+
+    private final HashMap<String, ArrayDeque<SyncUpload>> mUploadsByOrderingKey = new HashMap<>();
+    private final HashMap<String, ArrayList<SyncUpload>> mUploadsByConflictKey = new HashMap<>();
+    private long mWakeUpTime;
+    // Changed every time a sync object changes state, written with the sync lock held and read without it
+    private volatile int mVersion;
+    private final Listener mListener;
+
+    SyncQueue(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    void addFetch(@NonNull SyncFetch fetch) {
+        fetch.setQueuedTime(SystemClock.elapsedRealtime());
+        fetch.clearDependencyResult();
+        mFetches.add(fetch);
+        enqueue(fetch);
+    }
+
+    void addPrefetch(@NonNull SyncFetch prefetch) {
+        prefetch.setQueuedTime(SystemClock.elapsedRealtime());
+        prefetch.clearDependencyResult();
+        mPrefetches.add(prefetch);
+        enqueue(prefetch);
+    }
+
+    void addUpload(@NonNull SyncUpload upload) {
+        upload.setQueuedTime(SystemClock.elapsedRealtime());
+        upload.clearDependencyResult();
+        mUploads.add(upload);
+
+        String conflictKey = upload.getConflictKey();
+        if (conflictKey != null) {
+            ArrayList<SyncUpload> uploads = mUploadsByConflictKey.get(conflictKey);
+            if (uploads == null) {
+                uploads = new ArrayList<>();
+                mUploadsByConflictKey.put(conflictKey, uploads);
+            }
+            uploads.add(upload);
+        }
+
+        String orderingKey = upload.getOrderingKey();
+        if (orderingKey != null) {
+            ArrayDeque<SyncUpload> uploads = mUploadsByOrderingKey.get(orderingKey);
+            if (uploads == null) {
+                uploads = new ArrayDeque<>();
+                mUploadsByOrderingKey.put(orderingKey, uploads);
+            }
+            uploads.addLast(upload);
+            if (uploads.size() > 1) {
+                upload.setQueueState(STATE_BLOCKED);
+                mUploadsBlocked++;
+                mVersion++;
+                return;
+            }
+        }
+        enqueue(upload);
+    }
+
+    /**
+     * @return The next sync object to start without removing it from the queue, or null if there is none. Uploads are
+     * always returned before fetches and fetches are only returned if there are no uploads. If all uploads are waiting
+     * for their dependencies, the fetches they wait for are returned. Prefetches are only returned if there are no
+     * fetches or uploads at all and fewer prefetches than the prefetch concurrency are in flight.
+     */
+    @Nullable
+    SyncObject peekNext() {
+        long now = SystemClock.elapsedRealtime();
+        while (!mDelayed.isEmpty() && mDelayed.peek().getEarliestStartTime() <= now) {
+            setReady(mDelayed.poll());
+            mVersion++;
+        }
+        mWakeUpTime = mDelayed.isEmpty() ? 0 : mDelayed.peek().getEarliestStartTime();
+
+        if (!mUploadsReady.isEmpty()) {
+            return mUploadsReady.iterator().next();
+        }
+        if (!mFetchesReady.isEmpty()) {
+            if (mUploads.isEmpty()) {
+                return mFetchesReady.iterator().next();
+            }
+            if (areUploadsWaiting()) {
+                for (SyncFetch fetch : mFetchesReady) {
+                    if (fetch.isNeededByUpload()) {
+                        return fetch;
+                    }
+                }
+            }
+        }
+        if (isIdle() && !mPrefetchesReady.isEmpty() && mPrefetchesInFlight.size() < mPrefetchConcurrency) {
+            return mPrefetchesReady.iterator().next();
+        }
+        return null;
+    }
+
+    /**
+     * @return The {@link SystemClock#elapsedRealtime()} time when the first delayed sync object can be started, 0 if no
+     * sync object is delayed. Updated by {@link #peekNext()}.
+     */
+    long getWakeUpTime() {
+        return mWakeUpTime;
+    }
+
+    void markInFlight(@NonNull SyncObject syncObject) {
+        removeFromState(syncObject);
+        if (isPrefetch(syncObject)) {
+            mPrefetchesInFlight.add((SyncFetch) syncObject);
+        } else if (syncObject instanceof SyncFetch) {
+            mFetchesInFlight.add((SyncFetch) syncObject);
+        } else {
+            mUploadsInFlight.add((SyncUpload) syncObject);
+        }
+        syncObject.setQueueState(STATE_IN_FLIGHT);
+    }
+
+    /**
+     * Puts a sync object that has been reset back in the queue so it is started again.
+     */
+    void requeue(@NonNull SyncObject syncObject) {
+        removeFromState(syncObject);
+        enqueue(syncObject);
+    }
+
+    void hold(@NonNull SyncObject syncObject) {
+        removeFromState(syncObject);
+        mHeld.add(syncObject);
+        syncObject.setQueueState(STATE_HELD);
+    }
+
+    /**
+     * Removes a sync object from the queue, whatever state it is in. If it was the first upload of an ordering key, the
+     * next upload with that key is unblocked.
+     */
+    void remove(@NonNull SyncObject syncObject) {
+        removeFromState(syncObject);
+        if (isPrefetch(syncObject)) {
+            mPrefetches.remove(syncObject);
+        } else if (syncObject instanceof SyncFetch) {
+            mFetches.remove(syncObject);
+        } else if (mUploads.remove(syncObject)) {
+            SyncUpload upload = (SyncUpload) syncObject;
+            String conflictKey = upload.getConflictKey();
+            if (conflictKey != null) {
+                ArrayList<SyncUpload> uploads = mUploadsByConflictKey.get(conflictKey);
+                if (uploads != null && uploads.remove(upload) && uploads.isEmpty()) {
+                    mUploadsByConflictKey.remove(conflictKey);
+                }
+            }
+
+            String orderingKey = upload.getOrderingKey();
+            ArrayDeque<SyncUpload> uploads = orderingKey != null ? mUploadsByOrderingKey.get(orderingKey) : null;
+            if (uploads != null) {
+                boolean wasFirst = uploads.peekFirst() == upload;
+                uploads.remove(upload);
+                if (uploads.isEmpty()) {
+                    mUploadsByOrderingKey.remove(orderingKey);
+                } else if (wasFirst && uploads.peekFirst().getQueueState() == STATE_BLOCKED) {
+                    requeue(uploads.peekFirst());
+                }
+            }
+        }
+        mListener.onQueueShrunk();
+    }
+
+    /**
+     * Removes a sync object that is done from the queue and keeps it as completing until {@link #finishCompleting} is
+     * called.
+     */
+    void markCompleting(@NonNull SyncObject syncObject) {
+        remove(syncObject);
+        mCompleting.add(syncObject);
+        syncObject.setQueueState(STATE_COMPLETING);
+    }
+
+    void finishCompleting(@NonNull SyncObject syncObject) {
+        if (syncObject.getQueueState() == STATE_COMPLETING) {
+            removeFromState(syncObject);
+        }
+    }
+
+    /**
+     * Makes a waiting sync object ready to be started if it has no more pending dependencies.
+     *
+     * @return True if the sync object was released.
+     */
+    boolean releaseWaiting(@NonNull SyncObject syncObject) {
+        if (syncObject.getQueueState() != STATE_WAITING || syncObject.hasPendingDependencies()) {
+            return false;
+        }
+        requeue(syncObject);
+        return true;
+    }
+
+    /**
+     * @return True if the fetch can't be started because of the queued uploads. Fetches are held back as long as there
+     * are uploads, as the uploads have already been prepared and a fetch could save over their changes. If all uploads
+     * are waiting for their dependencies, the fetches they wait for can be started.
+     */
+    boolean isBehindFetchBarrier(@NonNull SyncFetch fetch) {
+        return !mUploads.isEmpty() && !(areUploadsWaiting() && fetch.isNeededByUpload());
+    }
+
+    /**
+     * @return True if all uploads are waiting for their dependencies or are blocked behind such an upload.
+     */
+    private boolean areUploadsWaiting() {
+        return mUploads.size() == mUploadsWaiting + mUploadsBlocked;
+    }
+
+    /**
+     * @return A number that changes every time a sync object changes state. Can be read without the sync lock.
+     */
+    int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Changes the version for a change outside the queue that affects why sync objects are waiting.
+     */
+    void invalidate() {
+        mVersion++;
+    }
+
+    /**
+     * @return True if there are no fetches or uploads other than prefetches, except those that are completing.
+     */
+    boolean isIdle() {
+        return mFetches.isEmpty() && mUploads.isEmpty();
+    }
+
+    void setPrefetchConcurrency(int prefetchConcurrency) {
+        mPrefetchConcurrency = prefetchConcurrency;
+    }
+
+    boolean hasUploads() {
+        return !mUploads.isEmpty();
+    }
+
+    /**
+     * @return All fetches that are not completing, in the order they were added.
+     */
+    @NonNull
+    Collection<SyncFetch> getFetches() {
+        return mFetches;
+    }
+
+    /**
+     * @return All uploads that are not completing, in the order they were added.
+     */
+    @NonNull
+    Collection<SyncUpload> getUploads() {
+        return mUploads;
+    }
+
+    @NonNull
+    Collection<SyncFetch> getFetchesInFlight() {
+        return mFetchesInFlight;
+    }
+
+    @NonNull
+    Collection<SyncUpload> getUploadsInFlight() {
+        return mUploadsInFlight;
+    }
+
+    /**
+     * @return All prefetches that are not completing, in the order they were added.
+     */
+    @NonNull
+    Collection<SyncFetch> getPrefetches() {
+        return mPrefetches;
+    }
+
+    @NonNull
+    Collection<SyncFetch> getPrefetchesInFlight() {
+        return mPrefetchesInFlight;
+    }
+
+    @NonNull
+    Collection<SyncObject> getHeld() {
+        return mHeld;
+    }
+
+    @NonNull
+    Collection<SyncObject> getCompleting() {
+        return mCompleting;
+    }
+
+    /**
+     * @return The queued uploads that can conflict with the given upload. If the upload has a conflict key only the uploads
+     * with the same key are returned, otherwise all queued uploads.
+     */
+    @NonNull
+    List<SyncUpload> getPendingUploads(@NonNull SyncUpload upload) {
+        String conflictKey = upload.getConflictKey();
+        if (conflictKey != null) {
+            List<SyncUpload> uploads = mUploadsByConflictKey.get(conflictKey);
+            return uploads != null ? uploads : Collections.<SyncUpload>emptyList();
+        }
+        return new ArrayList<>(mUploads);
+    }
+
+    void clear() {
+        for (SyncObject syncObject : mFetches) {
+            syncObject.setQueueState(STATE_NONE);
+        }
+        for (SyncObject syncObject : mUploads) {
+            syncObject.setQueueState(STATE_NONE);
+        }
+        for (SyncObject syncObject : mPrefetches) {
+            syncObject.setQueueState(STATE_NONE);
+        }
+        for (SyncObject syncObject : mCompleting) {
+            syncObject.setQueueState(STATE_NONE);
+        }
+        mFetches.clear();
+        mUploads.clear();
+        mFetchesReady.clear();
+        mUploadsReady.clear();
+        mFetchesInFlight.clear();
+        mUploadsInFlight.clear();
+        mHeld.clear();
+        mCompleting.clear();
+        mWaiting.clear();
+        mPrefetches.clear();
+        mPrefetchesReady.clear();
+        mPrefetchesInFlight.clear();
+        mUploadsWaiting = 0;
+        mUploadsBlocked = 0;
+        mDelayed.clear();
+        mUploadsByOrderingKey.clear();
+        mUploadsByConflictKey.clear();
+        mWakeUpTime = 0;
+        mVersion++;
+        mListener.onQueueShrunk();
+    }
+
+    private void enqueue(@NonNull SyncObject syncObject) {
+        if (syncObject.hasPendingDependencies()) {
+            mWaiting.add(syncObject);
+            if (syncObject instanceof SyncUpload) {
+                mUploadsWaiting++;
+            }
+            syncObject.setQueueState(STATE_WAITING);
+        } else if (isPrefetch(syncObject)) {
+            mPrefetchesReady.add((SyncFetch) syncObject);
+            syncObject.setQueueState(STATE_PREFETCH);
+        } else if (syncObject.getEarliestStartTime() > SystemClock.elapsedRealtime()) {
+            mDelayed.add(syncObject);
+            syncObject.setQueueState(STATE_DELAYED);
+        } else {
+            setReady(syncObject);
+        }
+        mVersion++;
+    }
+
+    private void setReady(@NonNull SyncObject syncObject) {
+        if (syncObject instanceof SyncFetch) {
+            mFetchesReady.add((SyncFetch) syncObject);
+        } else {
+            mUploadsReady.add((SyncUpload) syncObject);
+        }
+        syncObject.setQueueState(STATE_READY);
+    }
+
+    private void removeFromState(@NonNull SyncObject syncObject) {
+        switch (syncObject.getQueueState()) {
+            case STATE_READY:
+                if (syncObject instanceof SyncFetch) {
+                    mFetchesReady.remove(syncObject);
+                } else {
+                    mUploadsReady.remove(syncObject);
+                }
+                break;
+            case STATE_DELAYED:
+                mDelayed.remove(syncObject);
+                break;
+            case STATE_PREFETCH:
+                mPrefetchesReady.remove(syncObject);
+                break;
+            case STATE_BLOCKED:
+                mUploadsBlocked--;
+                break;
+            case STATE_WAITING:
+                mWaiting.remove(syncObject);
+                if (syncObject instanceof SyncUpload) {
+                    mUploadsWaiting--;
+                }
+                break;
+            case STATE_HELD:
+                mHeld.remove(syncObject);
+                break;
+            case STATE_IN_FLIGHT:
+                if (isPrefetch(syncObject)) {
+                    mPrefetchesInFlight.remove(syncObject);
+                } else if (syncObject instanceof SyncFetch) {
+                    mFetchesInFlight.remove(syncObject);
+                } else {
+                    mUploadsInFlight.remove(syncObject);
+                }
+                break;
+            case STATE_COMPLETING:
+                mCompleting.remove(syncObject);
+                break;
+            default:
+                break;
+        }
+        syncObject.setQueueState(STATE_NONE);
+        mVersion++;
+    }
+
+    private static boolean isPrefetch(@NonNull SyncObject syncObject) {
+        return syncObject instanceof SyncFetch && ((SyncFetch) syncObject).isPrefetch();
+    }
+}
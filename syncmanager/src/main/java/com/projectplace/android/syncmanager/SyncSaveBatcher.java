@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the save, prepare and revert jobs of a sync manager on the serial executor of {@link AsyncTask}. Jobs that are
+ * queued before the previous ones have been run are grouped into one batch, which is wrapped in one transaction of the
+ * transaction listener, so 200 fetches that are done at the same time are saved in one transaction instead of 200.
+ * <p/>
+ * The jobs run in the order they were queued. If a job throws while a transaction listener is set, the batch is rolled
+ * back and its jobs are run again one transaction each, so only the job that throws is lost. Its exception is logged
+ * and passed to the job. Without a transaction listener nothing can be rolled back, so the exception is thrown as it
+ * would be from any background task.
+ */
+final class SyncSaveBatcher {
+    private static final String TAG = SyncSaveBatcher.class.getSimpleName();
+
+    /**
+     * A job with the same phases as an {@link AsyncTask}, plus one that runs on the background thread after the batch
+     * has been committed.
+     */
+    abstract static class Job {
+        private RuntimeException mError;
+
+        /**
+         * Does the database work, inside the transaction of the batch. Can be run twice if another job in the batch
+         * throws, so it must not have side effects outside the database that can't be repeated.
+         */
+        abstract void doInBackground();
+
+        /**
+         * Called on the background thread after the batch has been committed or rolled back.
+         *
+         * @param successful False if {@link #doInBackground()} threw.
+         */
+        void onCommitted(boolean successful) {
+        }
+
+        /**
+         * Called on the main thread after {@link #onCommitted(boolean)}.
+         */
+        void onPostExecute() {
+        }
+
+        /**
+         * @return The exception thrown by {@link #doInBackground()}, or null if it did not throw.
+         */
+        @Nullable
+        RuntimeException getError() {
+            return mError;
+        }
+    }
+
+    private final Object mLock = new Object();
+    // Posts the results of the batches and ends the batch window, the timer wheel is too coarse for a window
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private ArrayList<Job> mPendingJobs = new ArrayList<>();
+    private boolean mDrainScheduled;
+    // True while saves are waiting for the end of the batch window
+    private boolean mWindowScheduled;
+    private volatile SyncManager.TransactionListener mTransactionListener;
+    private volatile long mBatchWindow;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            List<Job> batch;
+            synchronized (mLock) {
+                batch = mPendingJobs;
+                mPendingJobs = new ArrayList<>();
+                mDrainScheduled = false;
+            }
+            runBatch(batch);
+        }
+    };
+
+    private final Runnable mEndWindow = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                if (!mWindowScheduled) {
+                    return;
+                }
+                mWindowScheduled = false;
+                if (mDrainScheduled) {
+                    return;
+                }
+                mDrainScheduled = true;
+            }
+            AsyncTask.SERIAL_EXECUTOR.execute(mDrain);
+        }
+    };
+
+    void setTransactionListener(@Nullable SyncManager.TransactionListener transactionListener) {
+        mTransactionListener = transactionListener;
+    }
+
+    /**
+     * Sets how long saves wait for more jobs before a batch is run. Default is 0 which means a batch only contains the
+     * jobs that are queued while the serial executor is busy.
+     */
+    void setBatchWindow(long batchWindow) {
+        mBatchWindow = batchWindow;
+    }
+
+    /**
+     * Queues a job that is run as soon as the serial executor is free, together with all jobs queued before it.
+     */
+    void execute(@NonNull Job job) {
+        add(job, false);
+    }
+
+    /**
+     * Queues a save job, which may wait for the batch window so more saves can be batched with it.
+     */
+    void executeSave(@NonNull Job job) {
+        add(job, mBatchWindow > 0);
+    }
+
+    private void add(@NonNull Job job, boolean canWait) {
+        synchronized (mLock) {
+            mPendingJobs.add(job);
+            if (mDrainScheduled) {
+                return;
+            }
+            if (canWait) {
+                if (!mWindowScheduled) {
+                    mWindowScheduled = true;
+                    mMainHandler.postDelayed(mEndWindow, mBatchWindow);
+                }
+                return;
+            }
+            // A job that can't wait ends the window for the saves queued before it
+            if (mWindowScheduled) {
+                mWindowScheduled = false;
+                mMainHandler.removeCallbacks(mEndWindow);
+            }
+            mDrainScheduled = true;
+        }
+        AsyncTask.SERIAL_EXECUTOR.execute(mDrain);
+    }
+
+    private void runBatch(@NonNull final List<Job> batch) {
+        SyncManager.TransactionListener transactionListener = mTransactionListener;
+        final boolean[] successful = new boolean[batch.size()];
+        boolean batchSuccessful = false;
+        if (transactionListener != null && batch.size() > 1) {
+            transactionListener.onBeginBatch();
+            try {
+                for (Job job : batch) {
+                    job.doInBackground();
+                }
+                batchSuccessful = true;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Save failed, rolling back the batch of " + batch.size() + " and running the jobs one by one", e);
+            } finally {
+                transactionListener.onEndBatch(batchSuccessful);
+            }
+        }
+        if (batchSuccessful) {
+            Arrays.fill(successful, true);
+        } else {
+            for (int i = 0; i < batch.size(); i++) {
+                successful[i] = runIsolated(transactionListener, batch.get(i));
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).onCommitted(successful[i]);
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Job job : batch) {
+                    job.onPostExecute();
+                }
+            }
+        });
+    }
+
+    private boolean runIsolated(@Nullable SyncManager.TransactionListener transactionListener, @NonNull Job job) {
+        if (transactionListener == null) {
+            job.doInBackground();
+            return true;
+        }
+        transactionListener.onBeginBatch();
+        boolean successful = false;
+        try {
+            job.doInBackground();
+            successful = true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Save failed and was rolled back", e);
+            job.mError = e;
+        } finally {
+            transactionListener.onEndBatch(successful);
+        }
+        return successful;
+    }
+}
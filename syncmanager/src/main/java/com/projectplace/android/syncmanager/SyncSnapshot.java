@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable view of every sync object in the queue of a sync manager at one point in time, for diagnostics screens
+ * and watchdogs. It holds no references to the sync objects themselves.
+ *
+ * @see SyncManager#snapshot()
+ */
+public final class SyncSnapshot {
+    // Waiting to be started
+    public static final int STATE_READY = SyncQueue.STATE_READY;
+    // Waiting for its earliest start time, for example a retry backoff
+    public static final int STATE_DELAYED = SyncQueue.STATE_DELAYED;
+    // Waiting for an earlier upload with the same ordering key
+    public static final int STATE_BLOCKED = SyncQueue.STATE_BLOCKED;
+    // Waiting for its constraints to be met
+    public static final int STATE_HELD = SyncQueue.STATE_HELD;
+    // Started and waiting for the sync to be done
+    public static final int STATE_IN_FLIGHT = SyncQueue.STATE_IN_FLIGHT;
+    // Done and waiting for the save and the listeners to be called
+    public static final int STATE_COMPLETING = SyncQueue.STATE_COMPLETING;
+    // Waiting for its dependencies to succeed
+    public static final int STATE_WAITING = SyncQueue.STATE_WAITING;
+    // Prefetch waiting for the sync manager to be idle
+    public static final int STATE_PREFETCH = SyncQueue.STATE_PREFETCH;
+
+    // Not held back by anything but its state
+    public static final int WAIT_NONE = 0;
+    // Ready but held back until the access token has been refreshed
+    public static final int WAIT_ACCESS_TOKEN = 1;
+    // Ready fetch held back until the queued uploads are done
+    public static final int WAIT_UPLOADS = 2;
+    // Delayed background sync object held to be started in one burst with others
+    public static final int WAIT_BURST = 3;
+
+    static final SyncSnapshot EMPTY = new SyncSnapshot(-1, 0, Collections.<Entry>emptyList());
+
+    /**
+     * One sync object in the snapshot.
+     */
+    public static final class Entry {
+        private final Class<? extends SyncObject> mSyncClass;
+        private final int mState;
+        private final int mWaitReason;
+        private final long mAge;
+        private final int mRetries;
+
+        Entry(@NonNull Class<? extends SyncObject> syncClass, int state, int waitReason, long age, int retries) {
+            mSyncClass = syncClass;
+            mState = state;
+            mWaitReason = waitReason;
+            mAge = age;
+            mRetries = retries;
+        }
+
+        @NonNull
+        public Class<? extends SyncObject> getSyncClass() {
+            return mSyncClass;
+        }
+
+        /**
+         * @return One of the STATE constants.
+         */
+        public int getState() {
+            return mState;
+        }
+
+        /**
+         * @return One of the WAIT constants.
+         */
+        public int getWaitReason() {
+            return mWaitReason;
+        }
+
+        /**
+         * @return How many milliseconds the sync object had been in the queue when the snapshot was taken.
+         */
+        public long getAge() {
+            return mAge;
+        }
+
+        /**
+         * @return The retries the sync object has left, always 0 for uploads.
+         */
+        public int getRetries() {
+            return mRetries;
+        }
+
+        @Override
+        public String toString() {
+            return mSyncClass.getSimpleName() + " state=" + mState + " wait=" + mWaitReason + " age=" + mAge
+                    + "ms retries=" + mRetries;
+        }
+    }
+
+    private final int mVersion;
+    private final long mTime;
+    private final List<Entry> mEntries;
+
+    SyncSnapshot(int version, long time, @NonNull List<Entry> entries) {
+        mVersion = version;
+        mTime = time;
+        mEntries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return The version of the queue the snapshot was taken from, -1 if no snapshot has been taken yet. Two snapshots
+     * with the same version have the same states.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return The {@link android.os.SystemClock#elapsedRealtime()} time when the snapshot was taken, 0 if no snapshot has
+     * been taken yet.
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return The sync objects in the queue, uploads first and then fetches, prefetches and completing sync objects, each
+     * in the order they were added.
+     */
+    @NonNull
+    public List<Entry> getEntries() {
+        return mEntries;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("SyncSnapshot version=").append(mVersion).append(" time=").append(mTime);
+        for (Entry entry : mEntries) {
+            builder.append("\n  ").append(entry);
+        }
+        return builder.toString();
+    }
+}
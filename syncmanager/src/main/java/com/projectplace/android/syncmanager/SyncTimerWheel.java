@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed timer wheel that runs scheduled tasks on a single thread. Scheduling and cancelling a task is done in
+ * constant time, no matter how many tasks are scheduled, which makes it suitable to keep a timeout for every running
+ * sync object. The precision is one tick.
+ * <p/>
+ * The thread only ticks while there are scheduled tasks, otherwise it waits so it doesn't wake up the device. If no
+ * task is scheduled for a while the thread stops, and it is started again by the next task.
+ */
+final class SyncTimerWheel {
+    private static final String TAG = SyncTimerWheel.class.getSimpleName();
+    private static final long DEFAULT_TICK_DURATION = 500;
+    private static final int DEFAULT_WHEEL_SIZE = 256;
+    // How long the thread waits for new tasks before it stops
+    private static final long IDLE_TIMEOUT = 10000;
+
+    /**
+     * A handle to a scheduled task that can be used to cancel it.
+     */
+    static final class Timeout {
+        private final Runnable mTask;
+        private long mRemainingRounds;
+        private boolean mDone;
+
+        private Timeout(Runnable task) {
+            mTask = task;
+        }
+    }
+
+    private final String mName;
+    private final long mTickDuration;
+    private final ArrayList<ArrayList<Timeout>> mWheel;
+    private final Object mLock = new Object();
+    private Thread mThread;
+    private long mStartTime;
+    private long mTick;
+    private int mPending;
+
+    SyncTimerWheel(@NonNull String name) {
+        this(name, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+    }
+
+    SyncTimerWheel(@NonNull String name, long tickDuration, int wheelSize) {
+        mName = name;
+        mTickDuration = tickDuration;
+        mWheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            mWheel.add(new ArrayList<Timeout>());
+        }
+    }
+
+    /**
+     * Schedules a task to be run on the timer thread after the delay. The task must be quick as it delays the other tasks.
+     * If it throws, the exception is logged and the other tasks are still run.
+     */
+    @NonNull
+    Timeout schedule(@NonNull Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task);
+        synchronized (mLock) {
+            long now = SystemClock.elapsedRealtime();
+            if (mPending == 0) {
+                // The wheel has been idle, start counting ticks from now
+                mStartTime = now - mTick * mTickDuration;
+            }
+            long deadline = now + Math.max(0, delayMillis);
+            long tick = Math.max(mTick, (deadline - mStartTime + mTickDuration - 1) / mTickDuration - 1);
+            timeout.mRemainingRounds = (tick - mTick) / mWheel.size();
+            mWheel.get((int) (tick % mWheel.size())).add(timeout);
+            mPending++;
+
+            if (mThread == null) {
+                mThread = new WheelThread();
+                mThread.start();
+            }
+            mLock.notify();
+        }
+        return timeout;
+    }
+
+    /**
+     * Cancels a scheduled task. Does nothing if the task has already been run or cancelled.
+     */
+    void cancel(@NonNull Timeout timeout) {
+        synchronized (mLock) {
+            if (!timeout.mDone) {
+                // The timeout is removed from its bucket the next time the bucket is visited
+                timeout.mDone = true;
+                mPending--;
+            }
+        }
+    }
+
+    /**
+     * Cancels all scheduled tasks.
+     */
+    void clear() {
+        synchronized (mLock) {
+            for (ArrayList<Timeout> bucket : mWheel) {
+                for (Timeout timeout : bucket) {
+                    timeout.mDone = true;
+                }
+                bucket.clear();
+            }
+            mPending = 0;
+        }
+    }
+
+    /**
+     * @return The tasks in the current bucket that should run now. Expired and cancelled tasks are removed.
+     */
+    private ArrayList<Runnable> expireCurrentBucket() {
+        ArrayList<Timeout> bucket = mWheel.get((int) (mTick % mWheel.size()));
+        ArrayList<Runnable> expired = null;
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.mDone) {
+                bucket.remove(i);
+            } else if (timeout.mRemainingRounds > 0) {
+                timeout.mRemainingRounds--;
+            } else {
+                bucket.remove(i);
+                timeout.mDone = true;
+                mPending--;
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(timeout.mTask);
+            }
+        }
+        mTick++;
+        return expired;
+    }
+
+    private class WheelThread extends Thread {
+        WheelThread() {
+            super(mName);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ArrayList<Runnable> expired = null;
+                synchronized (mLock) {
+                    try {
+                        if (mPending == 0) {
+                            mLock.wait(IDLE_TIMEOUT);
+                            if (mPending == 0) {
+                                mThread = null;
+                                return;
+                            }
+                            continue;
+                        }
+                        long nextTickTime = mStartTime + (mTick + 1) * mTickDuration;
+                        long now = SystemClock.elapsedRealtime();
+                        if (now < nextTickTime) {
+                            mLock.wait(nextTickTime - now);
+                            continue;
+                        }
+                        expired = expireCurrentBucket();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (expired != null) {
+                    for (Runnable task : expired) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            // The thread must keep running, or no timeout would ever fire again
+                            Log.e(TAG, "Scheduled task threw", e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.projectplace.android.syncmanager;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 /**
  * This class should be subclassed for all sync requests that uploads data.
  */
@@ -95,6 +98,49 @@ public abstract class SyncUpload extends SyncObject {
         return false;
     }
 
+    /**
+     * Override this to return a key that identifies the entity this upload changes, for example "item_12_name". If a key
+     * is returned, {@link #hasConflict(SyncUpload)} and {@link #updateRevertValues(SyncUpload, boolean)} are only called
+     * with queued uploads that have the same key instead of all queued uploads. Default is null.
+     */
+    @Nullable
+    public String getConflictKey() {
+        return null;
+    }
+
+    /**
+     * Override this to let this upload replace queued uploads that have not been started yet, for example when the same
+     * field is edited several times in a row and only the last value needs to be sent. It is only called with uploads
+     * that have the same {@link #getConflictKey()}. A superseded upload is removed from the queue without being reverted
+     * and its listeners get {@link SyncListener#onSyncAborted(SyncObject)}. The revert values of the superseded upload
+     * have already been passed to this upload with {@link #updateRevertValues(SyncUpload, boolean)}.
+     *
+     * @param upload A queued upload with the same conflict key that has not been started.
+     * @return true if the upload should be removed from the queue. Default is false.
+     */
+    public boolean supersedes(@NonNull SyncUpload upload) {
+        return false;
+    }
+
+    /**
+     * Override this to hold the upload for a number of milliseconds after it has been added before it can be started.
+     * Together with {@link #supersedes(SyncUpload)} this collapses a burst of edits into a single upload.
+     * Default is 0 which means the upload can be started directly.
+     */
+    public long getDebounceTime() {
+        return 0;
+    }
+
+    /**
+     * Override this to return true if the upload would not change anything on the server, for example when an edited
+     * value has been changed back to its revert value. It is called just before the upload is started and only if no other
+     * upload with the same {@link #getConflictKey()} is queued or running. A no-op upload is removed without being started
+     * or reverted and its listeners get {@link SyncListener#onSyncAborted(SyncObject)}.
+     */
+    public boolean isNoOp() {
+        return false;
+    }
+
     /**
      * This method could be overridden in uploads that use the revert mechanism.
      * If several upload operations of the same type is running the revert values will change depending on what happens.
@@ -113,6 +159,16 @@ public abstract class SyncUpload extends SyncObject {
     public void updateRevertValues(SyncUpload upload, boolean useOldValues) {
     }
 
+    /**
+     * Override this to return a key that identifies the entity this upload changes, for example "item_12". Uploads with
+     * the same ordering key are started one at a time in the order they were added, while uploads with different keys
+     * still run in parallel. Default is null which means the upload is started as soon as possible.
+     */
+    @Nullable
+    public String getOrderingKey() {
+        return null;
+    }
+
     /**
      * Whenever an upload is added all current fetches will be reset. This is done to prevent any conflicts from happening.
      * Overriding this method you can check for specific fetches that you know will never conflict with this upload. This
@@ -125,6 +181,19 @@ public abstract class SyncUpload extends SyncObject {
         return true;
     }
 
+    /**
+     * The sync manager remembers the content digest of the last fetch of each fetch key. When this upload is prepared,
+     * saved or reverted the local data changes, so the digests of the data it touches are forgotten and the next fetch
+     * of that data is saved even if it is unchanged on the server. Override this to keep the digests of fetch keys that
+     * this upload never touches, for example by comparing the key with {@link #getConflictKey()}.
+     *
+     * @param fetchKey The {@link SyncFetch#getFetchKey()} of a remembered digest.
+     * @return true if the digest of the fetch key should be forgotten, otherwise false. Default is true.
+     */
+    protected boolean shouldResetFetchKey(@NonNull String fetchKey) {
+        return true;
+    }
+
     /**
      * This should be called after an upload is successfully finished.
      */
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An upload of a file that is sent in chunks of a fixed size. The file is streamed from disk one chunk at a time, so
+ * only one chunk is held in memory no matter how large the file is.
+ * <p/>
+ * The offset confirmed by the server is checkpointed after every chunk. A chunk that fails is retried after a short
+ * delay without failing the upload. When the upload is started again, for example when a failed upload is added again
+ * with {@link SyncManager#upload(SyncUpload)}, which resets it, or when a new upload of the same file is added after a
+ * process restart, it continues from the last confirmed chunk instead of sending the whole file again. To resume after a process restart, the checkpoint has to be persisted with
+ * {@link #getCheckpointFile()} or by overriding {@link #onLoadCheckpoint()} and {@link #onSaveCheckpoint(long)}, for
+ * example to ask the server for its offset.
+ * <p/>
+ * The network calls are made in {@link #onUploadChunk(ByteBuffer, long, long)}, so the upload can be tested against a
+ * local stand-in server by implementing only that method.
+ */
+public abstract class SyncUploadChunked extends SyncUpload {
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    // The delay before a failed chunk is retried, multiplied by the number of failures in a row
+    private static final long CHUNK_RETRY_BASE_DELAY = 500;
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread every time the server has confirmed a chunk.
+         *
+         * @param confirmedBytes The number of bytes the server has confirmed.
+         * @param totalBytes     The size of the file.
+         */
+        void onProgress(@NonNull SyncUploadChunked upload, long confirmedBytes, long totalBytes);
+    }
+
+    private final File mFile;
+    private final int mChunkSize;
+    private int mChunkRetries = 3;
+    private volatile long mConfirmedOffset;
+    private volatile long mTotalBytes;
+    private ProgressListener mProgressListener;
+    // The thread of the latest start, threads of earlier starts stop as soon as they see that it changed
+    private volatile UploadThread mUploadThread;
+
+    public SyncUploadChunked(@NonNull File file) {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    public SyncUploadChunked(@NonNull File file, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        mFile = file;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Sends one chunk to the server and blocks until the server has confirmed it. Called on a background thread.
+     *
+     * @param chunk      The bytes to send, from its position to its limit.
+     * @param offset     The offset in the file of the first byte of the chunk.
+     * @param totalBytes The size of the file.
+     * @return The offset the server has confirmed, normally offset plus the size of the chunk. A smaller offset makes the
+     * rest of the chunk be sent again.
+     * @throws IOException If the chunk could not be sent. The chunk is retried until the chunk retries are used up.
+     */
+    @WorkerThread
+    protected abstract long onUploadChunk(@NonNull ByteBuffer chunk, long offset, long totalBytes) throws IOException;
+
+    /**
+     * Called on the background thread after the server has confirmed the last chunk, for example to tell the server that
+     * the file is complete. Default does nothing.
+     */
+    @WorkerThread
+    protected void onUploadComplete() throws IOException {
+    }
+
+    /**
+     * Override this to return a file where the confirmed offset is stored, so the upload can be resumed after a process
+     * restart. The file is deleted when the upload is done. Default is null which means the offset is only kept by
+     * this object.
+     */
+    @Nullable
+    protected File getCheckpointFile() {
+        return null;
+    }
+
+    /**
+     * Called on the background thread before the first chunk is sent.
+     *
+     * @return The offset to resume from. Default is the offset this object has confirmed so far, or the one in the
+     * checkpoint file if that is further.
+     */
+    @WorkerThread
+    protected long onLoadCheckpoint() {
+        File checkpointFile = getCheckpointFile();
+        if (checkpointFile != null && checkpointFile.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new FileInputStream(checkpointFile));
+                return Math.max(mConfirmedOffset, in.readLong());
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        return mConfirmedOffset;
+    }
+
+    /**
+     * Called on the background thread every time the server has confirmed a chunk.
+     *
+     * @param confirmedOffset The confirmed offset, or -1 when the upload is done and the checkpoint can be removed.
+     */
+    @WorkerThread
+    protected void onSaveCheckpoint(long confirmedOffset) {
+        File checkpointFile = getCheckpointFile();
+        if (checkpointFile == null) {
+            return;
+        }
+        if (confirmedOffset < 0) {
+            //noinspection ResultOfMethodCallIgnored
+            checkpointFile.delete();
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(checkpointFile));
+            out.writeLong(confirmedOffset);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Sets how many times in a row a chunk is retried before the upload fails. Default is 3. The retries wait 500 ms
+     * longer for every failure in a row.
+     */
+    public void setChunkRetries(int chunkRetries) {
+        mChunkRetries = chunkRetries;
+    }
+
+    public void setProgressListener(@Nullable ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+    @NonNull
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return The number of bytes the server has confirmed so far.
+     */
+    public long getConfirmedBytes() {
+        return mConfirmedOffset;
+    }
+
+    /**
+     * @return The size of the file, 0 until the upload has been started.
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    @Override
+    public void onStart() {
+        UploadThread uploadThread = new UploadThread();
+        mUploadThread = uploadThread;
+        uploadThread.start();
+    }
+
+    private void postProgress(final long confirmedBytes, final long totalBytes) {
+        final ProgressListener progressListener = mProgressListener;
+        if (progressListener == null) {
+            return;
+        }
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                progressListener.onProgress(SyncUploadChunked.this, confirmedBytes, totalBytes);
+            }
+        });
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private class UploadThread extends Thread {
+        UploadThread() {
+            super("SyncUploadChunked");
+        }
+
+        private boolean shouldStop() {
+            // Failed includes timed out. A failed upload can be added again and started before this thread returns from
+            // onUploadChunk(), which is why the thread also stops if it is no longer the latest.
+            return mUploadThread != this || isFailed() || isCancelled();
+        }
+
+        @Override
+        public void run() {
+            FileInputStream in = null;
+            try {
+                in = new FileInputStream(mFile);
+                FileChannel channel = in.getChannel();
+                long totalBytes = channel.size();
+                mTotalBytes = totalBytes;
+                long offset = Math.min(Math.max(0, onLoadCheckpoint()), totalBytes);
+                mConfirmedOffset = offset;
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(mChunkSize, Math.max(1, totalBytes)));
+                int failures = 0;
+
+                while (offset < totalBytes && !shouldStop()) {
+                    chunk.clear();
+                    channel.position(offset);
+                    while (chunk.hasRemaining() && channel.read(chunk) > 0) {
+                        // Read until the chunk is full or the file ends
+                    }
+                    chunk.flip();
+                    try {
+                        long confirmedOffset = onUploadChunk(chunk, offset, totalBytes);
+                        if (confirmedOffset <= offset) {
+                            throw new IOException("Server did not confirm any bytes at offset " + offset);
+                        }
+                        offset = Math.min(confirmedOffset, totalBytes);
+                        mConfirmedOffset = offset;
+                        failures = 0;
+                        onSaveCheckpoint(offset);
+                        postProgress(offset, totalBytes);
+                    } catch (IOException e) {
+                        if (++failures > mChunkRetries) {
+                            throw e;
+                        }
+                        try {
+                            Thread.sleep(failures * CHUNK_RETRY_BASE_DELAY);
+                        } catch (InterruptedException interrupted) {
+                            throw e;
+                        }
+                    }
+                }
+
+                if (!shouldStop()) {
+                    onUploadComplete();
+                    onSaveCheckpoint(-1);
+                    uploadSuccessful();
+                }
+            } catch (IOException e) {
+                if (!shouldStop()) {
+                    setError(e);
+                }
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FetchKeyIndexTest {
+    @Test
+    public void returnsTheDefaultValueForUnknownKeys() {
+        FetchKeyIndex index = new FetchKeyIndex();
+
+        assertEquals(-1, index.get("items", -1));
+    }
+
+    @Test
+    public void returnsTheLatestValueOfAKey() {
+        FetchKeyIndex index = new FetchKeyIndex();
+        index.put("items", 1);
+        index.put("items", 2);
+
+        assertEquals(2, index.get("items", -1));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedKeyWhenFull() {
+        FetchKeyIndex index = new FetchKeyIndex(2);
+        index.put("a", 1);
+        index.put("b", 2);
+        // Reading a key makes it the most recently used
+        index.get("a", -1);
+        index.put("c", 3);
+
+        assertEquals(1, index.get("a", -1));
+        assertEquals(-1, index.get("b", -1));
+        assertEquals(3, index.get("c", -1));
+    }
+
+    @Test
+    public void forgetsRemovedAndClearedKeys() {
+        FetchKeyIndex index = new FetchKeyIndex();
+        index.put("a", 1);
+        index.put("b", 2);
+
+        index.remove("a");
+        assertEquals(-1, index.get("a", -1));
+        assertEquals(2, index.get("b", -1));
+
+        index.clear();
+        assertEquals(-1, index.get("b", -1));
+    }
+
+    @Test
+    public void removesOnlyTheKeysThatMatchTheFilter() {
+        FetchKeyIndex index = new FetchKeyIndex();
+        index.put("item_1", 1);
+        index.put("item_2", 2);
+        index.put("items", 3);
+
+        index.removeKeys(new FetchKeyIndex.KeyFilter() {
+            @Override
+            public boolean matches(@NonNull String key) {
+                return key.startsWith("item_");
+            }
+        });
+
+        assertEquals(-1, index.get("item_1", -1));
+        assertEquals(-1, index.get("item_2", -1));
+        assertEquals(3, index.get("items", -1));
+    }
+}
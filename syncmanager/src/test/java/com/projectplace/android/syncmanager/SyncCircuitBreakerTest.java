@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncCircuitBreakerTest {
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_DURATION = 1000;
+
+    private final List<Integer> mStates = new ArrayList<>();
+    private SyncCircuitBreaker mCircuitBreaker;
+
+    private static class TestFetch extends SyncFetch {
+        @Nullable
+        @Override
+        public String getEndpointKey() {
+            return "items";
+        }
+
+        @Override
+        public void onReset() {
+        }
+
+        @Override
+        public void onSave() {
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mCircuitBreaker = new SyncCircuitBreaker(FAILURE_THRESHOLD, OPEN_DURATION, new SyncCircuitBreaker.Listener() {
+            @Override
+            public void onCircuitStateChanged(@NonNull String endpointKey, int state) {
+                assertEquals("items", endpointKey);
+                mStates.add(state);
+            }
+        });
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        fail(FAILURE_THRESHOLD - 1);
+        assertTrue(mCircuitBreaker.allowStart(new TestFetch()));
+
+        fail(1);
+        assertEquals(states(SyncManager.CIRCUIT_OPEN), mStates);
+        assertFalse(mCircuitBreaker.allowStart(new TestFetch()));
+    }
+
+    @Test
+    public void forgetsFailuresAfterASuccess() {
+        fail(FAILURE_THRESHOLD - 1);
+        mCircuitBreaker.onSuccess(new TestFetch());
+        fail(FAILURE_THRESHOLD - 1);
+
+        assertTrue(mCircuitBreaker.allowStart(new TestFetch()));
+        assertTrue(mStates.isEmpty());
+    }
+
+    @Test
+    public void letsOneProbeStartWhenHalfOpen() {
+        fail(FAILURE_THRESHOLD);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(OPEN_DURATION));
+
+        TestFetch probe = startProbe();
+        assertEquals(states(SyncManager.CIRCUIT_OPEN, SyncManager.CIRCUIT_HALF_OPEN), mStates);
+        assertFalse(mCircuitBreaker.allowStart(new TestFetch()));
+
+        mCircuitBreaker.onSuccess(probe);
+        assertEquals(states(SyncManager.CIRCUIT_OPEN, SyncManager.CIRCUIT_HALF_OPEN, SyncManager.CIRCUIT_CLOSED), mStates);
+        assertTrue(mCircuitBreaker.allowStart(new TestFetch()));
+    }
+
+    @Test
+    public void opensAgainWhenTheProbeFails() {
+        fail(FAILURE_THRESHOLD);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(OPEN_DURATION));
+
+        TestFetch probe = startProbe();
+        mCircuitBreaker.onFailure(probe);
+        assertEquals(states(SyncManager.CIRCUIT_OPEN, SyncManager.CIRCUIT_HALF_OPEN, SyncManager.CIRCUIT_OPEN), mStates);
+        assertFalse(mCircuitBreaker.allowStart(new TestFetch()));
+    }
+
+    @Test
+    public void ignoresSyncObjectsOtherThanTheProbeWhenHalfOpen() {
+        TestFetch straggler = new TestFetch();
+        assertTrue(mCircuitBreaker.allowStart(straggler));
+        fail(FAILURE_THRESHOLD);
+        ShadowSystemClock.advanceBy(Duration.ofMillis(OPEN_DURATION));
+
+        startProbe();
+        mCircuitBreaker.onSuccess(straggler);
+        mCircuitBreaker.onFailure(straggler);
+        assertEquals(states(SyncManager.CIRCUIT_OPEN, SyncManager.CIRCUIT_HALF_OPEN), mStates);
+    }
+
+    @NonNull
+    private TestFetch startProbe() {
+        TestFetch probe = new TestFetch();
+        assertTrue(mCircuitBreaker.allowStart(probe));
+        probe.setQueueState(SyncQueue.STATE_IN_FLIGHT);
+        return probe;
+    }
+
+    private void fail(int failures) {
+        for (int i = 0; i < failures; i++) {
+            mCircuitBreaker.onFailure(new TestFetch());
+        }
+    }
+
+    @NonNull
+    private static List<Integer> states(Integer... states) {
+        return Arrays.asList(states);
+    }
+}
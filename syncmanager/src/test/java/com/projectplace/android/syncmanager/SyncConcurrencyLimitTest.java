@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncConcurrencyLimitTest {
+    @Test
+    public void keepsTheInitialLimitWithinTheBounds() {
+        assertEquals(5, new SyncConcurrencyLimit(10, 1, 5).getLimit());
+        assertEquals(2, new SyncConcurrencyLimit(0, 2, 5).getLimit());
+    }
+
+    @Test
+    public void growsWhileLatenciesStayNearTheBaseline() {
+        SyncConcurrencyLimit limit = new SyncConcurrencyLimit(2, 1, 10);
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(SystemClock.elapsedRealtime(), 100);
+        }
+        assertEquals(4, limit.getLimit());
+
+        for (int i = 0; i < 1000; i++) {
+            limit.onSuccess(SystemClock.elapsedRealtime(), 100);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void halvesOnFailureButNotBelowTheMinimum() {
+        SyncConcurrencyLimit limit = new SyncConcurrencyLimit(8, 3, 10);
+        limit.onFailure(SystemClock.elapsedRealtime());
+        assertEquals(4, limit.getLimit());
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(10));
+        limit.onFailure(SystemClock.elapsedRealtime());
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test
+    public void halvesOnALatencySpike() {
+        SyncConcurrencyLimit limit = new SyncConcurrencyLimit(8, 1, 10);
+        limit.onSuccess(SystemClock.elapsedRealtime(), 100);
+        assertTrue(limit.getLimit() >= 8);
+
+        limit.onSuccess(SystemClock.elapsedRealtime(), 300);
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void decreasesOnceForSyncObjectsStartedBeforeTheLastDecrease() {
+        SyncConcurrencyLimit limit = new SyncConcurrencyLimit(8, 1, 10);
+        long startTime = SystemClock.elapsedRealtime();
+        ShadowSystemClock.advanceBy(Duration.ofMillis(10));
+
+        limit.onFailure(startTime);
+        limit.onFailure(startTime);
+        assertEquals(4, limit.getLimit());
+
+        // A sync object started after the decrease counts again
+        ShadowSystemClock.advanceBy(Duration.ofMillis(10));
+        limit.onFailure(SystemClock.elapsedRealtime());
+        assertEquals(2, limit.getLimit());
+    }
+}
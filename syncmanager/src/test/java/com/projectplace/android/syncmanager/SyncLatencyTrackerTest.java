@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyncLatencyTrackerTest {
+    private static class SlowFetch {
+    }
+
+    private static class FastFetch {
+    }
+
+    @Test
+    public void needsSixteenSamplesForAPercentile() {
+        SyncLatencyTracker tracker = new SyncLatencyTracker();
+        record(tracker, SlowFetch.class, 1, 15);
+        assertEquals(-1, tracker.getPercentile(SlowFetch.class, 0.95));
+
+        tracker.record(SlowFetch.class, 16);
+        assertEquals(16, tracker.getPercentile(SlowFetch.class, 1));
+    }
+
+    @Test
+    public void returnsTheLatencyAtThePercentile() {
+        SyncLatencyTracker tracker = new SyncLatencyTracker();
+        record(tracker, SlowFetch.class, 1, 20);
+
+        assertEquals(19, tracker.getPercentile(SlowFetch.class, 0.95));
+        assertEquals(10, tracker.getPercentile(SlowFetch.class, 0.5));
+        assertEquals(1, tracker.getPercentile(SlowFetch.class, 0));
+    }
+
+    @Test
+    public void keepsOnlyTheLatestSamples() {
+        SyncLatencyTracker tracker = new SyncLatencyTracker();
+        record(tracker, SlowFetch.class, 1000, 1063);
+        record(tracker, SlowFetch.class, 1, 64);
+
+        assertEquals(64, tracker.getPercentile(SlowFetch.class, 1));
+    }
+
+    @Test
+    public void keepsTheSamplesOfEachClassApart() {
+        SyncLatencyTracker tracker = new SyncLatencyTracker();
+        record(tracker, SlowFetch.class, 1001, 1016);
+        record(tracker, FastFetch.class, 1, 16);
+
+        assertEquals(1016, tracker.getPercentile(SlowFetch.class, 1));
+        assertEquals(16, tracker.getPercentile(FastFetch.class, 1));
+
+        tracker.clear();
+        assertEquals(-1, tracker.getPercentile(SlowFetch.class, 1));
+    }
+
+    private static void record(SyncLatencyTracker tracker, Class<?> syncClass, long fromLatency, long toLatency) {
+        for (long latency = fromLatency; latency <= toLatency; latency++) {
+            tracker.record(syncClass, latency);
+        }
+    }
+}
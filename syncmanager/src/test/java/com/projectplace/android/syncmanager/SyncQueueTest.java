@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncQueueTest {
+    private SyncQueue mQueue;
+    private int mShrunkCount;
+
+    private static class TestFetch extends SyncFetch {
+        @Override
+        public void onReset() {
+        }
+
+        @Override
+        public void onSave() {
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+    }
+
+    private static class TestUpload extends SyncUpload {
+        private final String mOrderingKey;
+
+        TestUpload() {
+            this(null);
+        }
+
+        TestUpload(@Nullable String orderingKey) {
+            mOrderingKey = orderingKey;
+        }
+
+        @Nullable
+        @Override
+        public String getOrderingKey() {
+            return mOrderingKey;
+        }
+
+        @Override
+        public void onStart() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mQueue = new SyncQueue(new SyncQueue.Listener() {
+            @Override
+            public void onQueueShrunk() {
+                mShrunkCount++;
+            }
+        });
+    }
+
+    @Test
+    public void returnsUploadsBeforeFetches() {
+        TestFetch fetch = new TestFetch();
+        TestUpload upload = new TestUpload();
+        mQueue.addFetch(fetch);
+        mQueue.addUpload(upload);
+
+        assertSame(upload, mQueue.peekNext());
+    }
+
+    @Test
+    public void holdsFetchesBackWhileUploadsAreQueued() {
+        TestFetch fetch = new TestFetch();
+        TestUpload upload = new TestUpload();
+        mQueue.addUpload(upload);
+        mQueue.addFetch(fetch);
+        mQueue.markInFlight(upload);
+
+        assertNull(mQueue.peekNext());
+        assertTrue(mQueue.isBehindFetchBarrier(fetch));
+
+        mQueue.remove(upload);
+        assertFalse(mQueue.isBehindFetchBarrier(fetch));
+        assertSame(fetch, mQueue.peekNext());
+    }
+
+    @Test
+    public void startsFetchesThatWaitingUploadsDependOn() {
+        TestFetch neededFetch = new TestFetch();
+        TestFetch otherFetch = new TestFetch();
+        TestUpload upload = new TestUpload();
+        upload.addDependency(neededFetch);
+        neededFetch.addDependent(upload);
+        mQueue.addUpload(upload);
+        mQueue.addFetch(otherFetch);
+        mQueue.addFetch(neededFetch);
+
+        assertEquals(SyncQueue.STATE_WAITING, upload.getQueueState());
+        assertSame(neededFetch, mQueue.peekNext());
+        assertTrue(mQueue.isBehindFetchBarrier(otherFetch));
+
+        mQueue.markInFlight(neededFetch);
+        mQueue.markCompleting(neededFetch);
+        neededFetch.resolveDependents(SyncObject.DEPENDENCY_SUCCEEDED);
+        assertTrue(mQueue.releaseWaiting(upload));
+        assertSame(upload, mQueue.peekNext());
+    }
+
+    @Test
+    public void blocksUploadsBehindEarlierUploadsWithTheSameOrderingKey() {
+        TestUpload first = new TestUpload("item");
+        TestUpload second = new TestUpload("item");
+        mQueue.addUpload(first);
+        mQueue.addUpload(second);
+
+        assertEquals(SyncQueue.STATE_BLOCKED, second.getQueueState());
+        assertSame(first, mQueue.peekNext());
+
+        mQueue.markInFlight(first);
+        assertNull(mQueue.peekNext());
+
+        mQueue.remove(first);
+        assertSame(second, mQueue.peekNext());
+    }
+
+    @Test
+    public void returnsPrefetchesOnlyWhenIdle() {
+        TestFetch fetch = new TestFetch();
+        TestFetch prefetch = new TestFetch();
+        TestFetch secondPrefetch = new TestFetch();
+        prefetch.setPrefetch(true);
+        secondPrefetch.setPrefetch(true);
+        mQueue.addPrefetch(prefetch);
+        mQueue.addPrefetch(secondPrefetch);
+        mQueue.addFetch(fetch);
+
+        assertSame(fetch, mQueue.peekNext());
+
+        mQueue.remove(fetch);
+        assertSame(prefetch, mQueue.peekNext());
+
+        // The prefetch concurrency is 1 by default
+        mQueue.markInFlight(prefetch);
+        assertNull(mQueue.peekNext());
+
+        mQueue.setPrefetchConcurrency(2);
+        assertSame(secondPrefetch, mQueue.peekNext());
+    }
+
+    @Test
+    public void delaysSyncObjectsUntilTheirEarliestStartTime() {
+        TestFetch fetch = new TestFetch();
+        long earliestStartTime = SystemClock.elapsedRealtime() + 1000;
+        fetch.setEarliestStartTime(earliestStartTime);
+        mQueue.addFetch(fetch);
+
+        assertNull(mQueue.peekNext());
+        assertEquals(SyncQueue.STATE_DELAYED, fetch.getQueueState());
+        assertEquals(earliestStartTime, mQueue.getWakeUpTime());
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1000));
+        assertSame(fetch, mQueue.peekNext());
+        assertEquals(0, mQueue.getWakeUpTime());
+    }
+
+    @Test
+    public void tellsTheListenerWhenItShrinks() {
+        TestFetch fetch = new TestFetch();
+        TestUpload upload = new TestUpload();
+        mQueue.addFetch(fetch);
+        mQueue.addUpload(upload);
+        assertEquals(0, mShrunkCount);
+
+        mQueue.remove(fetch);
+        assertEquals(1, mShrunkCount);
+
+        mQueue.clear();
+        assertEquals(2, mShrunkCount);
+        assertTrue(mQueue.isIdle());
+        assertEquals(SyncQueue.STATE_NONE, upload.getQueueState());
+    }
+}
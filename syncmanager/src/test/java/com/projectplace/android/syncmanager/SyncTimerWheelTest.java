@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The clock is advanced by the test, while the wheel thread waits in real time between its checks of the clock.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncTimerWheelTest {
+    // Small ticks and a small wheel so a delay of a second is many rounds
+    private static final long TICK_DURATION = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    private SyncTimerWheel mTimerWheel;
+
+    @Before
+    public void setUp() {
+        mTimerWheel = new SyncTimerWheel("TestTimerWheel", TICK_DURATION, WHEEL_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        mTimerWheel.clear();
+    }
+
+    @Test
+    public void runsATaskWhenItsDelayHasPassed() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        mTimerWheel.schedule(countDown(latch), 1000);
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(500));
+        assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(500));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void doesNotRunACancelledTask() throws InterruptedException {
+        final AtomicBoolean cancelledRun = new AtomicBoolean();
+        SyncTimerWheel.Timeout timeout = mTimerWheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                cancelledRun.set(true);
+            }
+        }, 100);
+        CountDownLatch latch = new CountDownLatch(1);
+        mTimerWheel.schedule(countDown(latch), 200);
+        mTimerWheel.cancel(timeout);
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(200));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelledRun.get());
+    }
+
+    @Test
+    public void runsTasksInTheOrderOfTheirDelays() throws InterruptedException {
+        final StringBuffer order = new StringBuffer();
+        CountDownLatch latch = new CountDownLatch(2);
+        mTimerWheel.schedule(append(order, "b", latch), 300);
+        mTimerWheel.schedule(append(order, "a", latch), 100);
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(300));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals("ab", order.toString());
+    }
+
+    @Test
+    public void keepsRunningWhenATaskThrows() throws InterruptedException {
+        mTimerWheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Thrown by the test");
+            }
+        }, 10);
+        CountDownLatch latch = new CountDownLatch(1);
+        mTimerWheel.schedule(countDown(latch), 50);
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(50));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private static Runnable append(final StringBuffer buffer, final String text, final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                buffer.append(text);
+                latch.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2026 Planview, Inc.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.projectplace.android.syncmanager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs chunked uploads against a stand-in server that keeps the received bytes in memory.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncUploadChunkedTest {
+    private static final int FILE_SIZE = 1000;
+    private static final int CHUNK_SIZE = 256;
+
+    private File mFile;
+    private File mCheckpointFile;
+    private byte[] mContent;
+    private StandInServer mServer;
+
+    /**
+     * Confirms every chunk it receives, except at the offsets it has been told to fail.
+     */
+    private static class StandInServer {
+        final byte[] mReceived = new byte[FILE_SIZE];
+        final List<Long> mOffsets = new ArrayList<>();
+        long mFailAtOffset = -1;
+        int mFailures;
+
+        synchronized long receive(@NonNull ByteBuffer chunk, long offset) throws IOException {
+            mOffsets.add(offset);
+            if (offset == mFailAtOffset && mFailures != 0) {
+                mFailures--;
+                throw new IOException("Stand-in failure at offset " + offset);
+            }
+            int length = chunk.remaining();
+            chunk.get(mReceived, (int) offset, length);
+            return offset + length;
+        }
+
+        synchronized List<Long> getOffsets() {
+            return new ArrayList<>(mOffsets);
+        }
+    }
+
+    private class TestUpload extends SyncUploadChunked {
+        private final File mCheckpoint;
+
+        TestUpload(@Nullable File checkpoint) {
+            super(mFile, CHUNK_SIZE);
+            mCheckpoint = checkpoint;
+        }
+
+        @Override
+        protected long onUploadChunk(@NonNull ByteBuffer chunk, long offset, long totalBytes) throws IOException {
+            return mServer.receive(chunk, offset);
+        }
+
+        @Nullable
+        @Override
+        protected File getCheckpointFile() {
+            return mCheckpoint;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("upload", ".bin");
+        mCheckpointFile = new File(mFile.getPath() + ".checkpoint");
+        mContent = new byte[FILE_SIZE];
+        new Random(1).nextBytes(mContent);
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(mContent);
+        } finally {
+            out.close();
+        }
+        mServer = new StandInServer();
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        mCheckpointFile.delete();
+    }
+
+    @Test
+    public void uploadsTheFileInChunks() throws InterruptedException {
+        TestUpload upload = new TestUpload(mCheckpointFile);
+        upload.onStart();
+        awaitFinished(upload);
+
+        assertTrue(upload.isDone());
+        assertEquals(FILE_SIZE, upload.getConfirmedBytes());
+        assertEquals(FILE_SIZE, upload.getTotalBytes());
+        assertEquals(offsets(0, 256, 512, 768), mServer.getOffsets());
+        assertArrayEquals(mContent, mServer.mReceived);
+        assertFalse("The checkpoint is removed when the upload is done", mCheckpointFile.exists());
+    }
+
+    @Test
+    public void retriesAFailedChunk() throws InterruptedException {
+        mServer.mFailAtOffset = 256;
+        mServer.mFailures = 1;
+        TestUpload upload = new TestUpload(null);
+        upload.onStart();
+        awaitFinished(upload);
+
+        assertTrue(upload.isDone());
+        assertEquals(offsets(0, 256, 256, 512, 768), mServer.getOffsets());
+        assertArrayEquals(mContent, mServer.mReceived);
+    }
+
+    @Test
+    public void failsWhenTheChunkRetriesAreUsedUp() throws InterruptedException {
+        mServer.mFailAtOffset = 512;
+        mServer.mFailures = -1;
+        TestUpload upload = new TestUpload(null);
+        upload.setChunkRetries(0);
+        upload.onStart();
+        awaitFinished(upload);
+
+        assertTrue(upload.isFailed());
+        assertTrue(upload.getError() instanceof IOException);
+        assertEquals(512, upload.getConfirmedBytes());
+    }
+
+    @Test
+    public void resumesFromTheConfirmedOffsetWhenStartedAgain() throws InterruptedException {
+        mServer.mFailAtOffset = 512;
+        mServer.mFailures = 1;
+        TestUpload upload = new TestUpload(null);
+        upload.setChunkRetries(0);
+        upload.onStart();
+        awaitFinished(upload);
+        assertTrue(upload.isFailed());
+
+        upload.reset();
+        upload.onStart();
+        awaitFinished(upload);
+
+        assertTrue(upload.isDone());
+        assertEquals(offsets(0, 256, 512, 512, 768), mServer.getOffsets());
+        assertArrayEquals(mContent, mServer.mReceived);
+    }
+
+    @Test
+    public void resumesFromTheCheckpointOfAnEarlierUpload() throws InterruptedException {
+        mServer.mFailAtOffset = 512;
+        mServer.mFailures = 1;
+        TestUpload upload = new TestUpload(mCheckpointFile);
+        upload.setChunkRetries(0);
+        upload.onStart();
+        awaitFinished(upload);
+        assertTrue(upload.isFailed());
+        assertTrue("The confirmed offset is checkpointed", mCheckpointFile.exists());
+
+        // A new upload of the same file, as after a process restart
+        TestUpload restartedUpload = new TestUpload(mCheckpointFile);
+        restartedUpload.onStart();
+        awaitFinished(restartedUpload);
+
+        assertTrue(restartedUpload.isDone());
+        assertEquals(offsets(0, 256, 512, 512, 768), mServer.getOffsets());
+        assertArrayEquals(mContent, mServer.mReceived);
+        assertFalse(mCheckpointFile.exists());
+    }
+
+    private static void awaitFinished(@NonNull SyncUpload upload) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!upload.isDone() && !upload.isFailed()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Upload did not finish");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @NonNull
+    private static List<Long> offsets(long... offsets) {
+        List<Long> list = new ArrayList<>();
+        for (long offset : offsets) {
+            list.add(offset);
+        }
+        return list;
+    }
+}